@@ -0,0 +1,53 @@
+package com.josephcday.totp;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.google.zxing.WriterException;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * QR Code rendering with the image cache disabled, in each output format and
+ * at several sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class QRBenchmark {
+    private static final String URL = TOTP.generateUrl("user@example.com", "QB5UDBW7OQKYYDZU");
+
+    @Param({ "128", "256", "512" })
+    public int size;
+
+    @Setup
+    public void setup() {
+        QR.configure(0);
+    }
+
+    @Benchmark
+    public Buffer generateQRCodeImage() throws WriterException, IOException {
+        return QR.generateQRCodeImage(URL, size);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Buffer generateQRCodeImageThreads() throws WriterException, IOException {
+        return QR.generateQRCodeImage(URL, size);
+    }
+
+    @Benchmark
+    public Buffer generateSvg() throws WriterException {
+        return QR.generateQRCode(URL, size, QR.Format.SVG);
+    }
+}
@@ -0,0 +1,94 @@
+package com.josephcday.totp;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Token generation, validation, secret and URL generation. The threaded
+ * variants run on four threads, where per thread engines should scale and any
+ * shared state shows up as contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class TOTPBenchmark {
+    private static final String SECRET = "QB5UDBW7OQKYYDZU";
+    private static final long TIME_MILLIS = 158524245000L;
+    private static final int TOKEN = 937384; // valid at TIME_MILLIS
+    private static final int WRONG_TOKEN = 111111; // valid nowhere near TIME_MILLIS
+
+    @Setup
+    public void setup() {
+        // measure the computation, not the optional caches
+        KeyCache.configure(0, 0);
+        TokenCache.configure(0);
+        ReplayGuard.configure(0, 0);
+    }
+
+    /**
+     * Validation window, a separate state so only the validate benchmarks run
+     * once per window.
+     */
+    @State(Scope.Benchmark)
+    public static class Window {
+        @Param({ "0", "1", "5" })
+        public int window;
+    }
+
+    @Benchmark
+    public String getToken() throws InvalidKeyException, NoSuchAlgorithmException {
+        return TOTP.getToken(SECRET, TIME_MILLIS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getTokenThreads() throws InvalidKeyException, NoSuchAlgorithmException {
+        return TOTP.getToken(SECRET, TIME_MILLIS);
+    }
+
+    @Benchmark
+    public boolean validatePass(Window state) throws InvalidKeyException, NoSuchAlgorithmException {
+        return TOTP.validate(SECRET, TOKEN, TIME_MILLIS, state.window);
+    }
+
+    /**
+     * Worst case, every interval in the window is computed.
+     */
+    @Benchmark
+    public boolean validateFail(Window state) throws InvalidKeyException, NoSuchAlgorithmException {
+        return TOTP.validate(SECRET, WRONG_TOKEN, TIME_MILLIS, state.window);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean validateFailThreads(Window state) throws InvalidKeyException, NoSuchAlgorithmException {
+        return TOTP.validate(SECRET, WRONG_TOKEN, TIME_MILLIS, state.window);
+    }
+
+    @Benchmark
+    public String b32Secret() {
+        return TOTP.b32Secret();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String b32SecretThreads() {
+        return TOTP.b32Secret();
+    }
+
+    @Benchmark
+    public String generateUrl() {
+        return TOTP.generateUrl("user@example.com", SECRET);
+    }
+}
@@ -0,0 +1,326 @@
+package com.josephcday.totp;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.InvalidKeyException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * End-to-end load test. Boots {@link TOTPVerticle} in-process, configured from
+ * {@link EnvVars} like the real server, and drives it from a separate vertx
+ * instance with an open-loop request schedule: requests are due at a fixed
+ * rate whether or not earlier ones have completed, and each latency is taken
+ * from when the request was due rather than when it was sent. A stalled server
+ * therefore shows up in the percentiles instead of silently slowing the
+ * generator, which corrects for coordinated omission.
+ *
+ * Arguments are {@code name=value} pairs:
+ *
+ * <pre>
+ * rate=2000          requests per second
+ * duration=30        measured seconds
+ * warmup=5           seconds run before measuring
+ * connections=32     client connection pool size
+ * secrets=1000       distinct secrets used
+ * mix=secret=5,token=30,checkPass=30,checkFail=25,image=10
+ * out=results.json   optional JSON report
+ * </pre>
+ */
+public class LoadTest {
+    private static final long BASE_UNIXTIME = 1000000000L; // first interval used by passing checks
+    private static final int[] WINDOWS = { 0, 1, 5 };
+    private static final int[] IMAGE_SIZES = { 128, 256 };
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999, 0.9999 };
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9", "p99.99" };
+
+    private final Map<Kind, Stats> stats = new LinkedHashMap<>();
+    private final Stats total = new Stats();
+    private final AtomicLong checkSteps = new AtomicLong();
+    private final LongAdder inFlight = new LongAdder();
+    private final String[] secrets;
+    private final int[] weights = new int[Kind.values().length];
+    private final int weightSum;
+
+    /**
+     * Request kinds in the mix.
+     */
+    enum Kind {
+        SECRET("secret", 200), TOKEN("token", 200), CHECK_PASS("checkPass", 200), CHECK_FAIL("checkFail", 401),
+        IMAGE("image", 200);
+
+        private final String label;
+        private final int expected; // status a correct server answers with
+
+        Kind(String label, int expected) {
+            this.label = label;
+            this.expected = expected;
+        }
+    }
+
+    LoadTest(String mix, int secretCount) {
+        for (Kind kind : Kind.values()) {
+            stats.put(kind, new Stats());
+        }
+        int sum = 0;
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split("=", 2);
+            Kind kind = null;
+            for (Kind value : Kind.values()) {
+                kind = value.label.equals(weight[0].trim()) ? value : kind;
+            }
+            if (kind == null || weight.length != 2) {
+                throw new IllegalArgumentException("mix entry is not kind=weight: " + entry);
+            }
+            weights[kind.ordinal()] = Integer.parseInt(weight[1].trim());
+            sum += weights[kind.ordinal()];
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("mix has no weight: " + mix);
+        }
+        weightSum = sum;
+        secrets = new String[secretCount];
+        for (int i = 0; i < secretCount; i++) {
+            secrets[i] = TOTP.b32Secret(16);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rate", "2000");
+        options.put("duration", "30");
+        options.put("warmup", "5");
+        options.put("connections", "32");
+        options.put("secrets", "1000");
+        options.put("mix", "secret=5,token=30,checkPass=30,checkFail=25,image=10");
+        options.put("out", "");
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2 || !options.containsKey(option[0])) {
+                throw new IllegalArgumentException("unknown argument " + arg + ", expected one of " + options.keySet());
+            }
+            options.put(option[0], option[1]);
+        }
+        int rate = Integer.parseInt(options.get("rate"));
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be greater than 0");
+        }
+
+        EnvVars.init();
+        EnvVars._appPort = freePort();
+        CompletableFuture<Void> deployed = new CompletableFuture<>();
+        Vertx server = TOTPVerticle.launch(ar -> {
+            if (ar.succeeded()) {
+                deployed.complete(null);
+            } else {
+                deployed.completeExceptionally(ar.cause());
+            }
+        });
+        if (server == null) {
+            throw new IllegalStateException("server configuration failed");
+        }
+        deployed.get(30, TimeUnit.SECONDS);
+
+        LoadTest test = new LoadTest(options.get("mix"), Integer.parseInt(options.get("secrets")));
+        Vertx client = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(1));
+        try {
+            JsonObject report = test.run(client, EnvVars._appPort, rate, Integer.parseInt(options.get("connections")),
+                    Integer.parseInt(options.get("warmup")), Integer.parseInt(options.get("duration")));
+            System.out.println(test.format(report));
+            if (!options.get("out").isEmpty()) {
+                Files.write(Paths.get(options.get("out")), report.encodePrettily().getBytes("UTF-8"));
+            }
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Runs the schedule and waits for the requests still in flight.
+     *
+     * @return JSON report
+     */
+    JsonObject run(Vertx vertx, int port, int rate, int connections, int warmupSeconds, int durationSeconds)
+            throws Exception {
+        HttpClient client = vertx.createHttpClient(
+                new HttpClientOptions().setMaxPoolSize(connections).setKeepAlive(true).setTcpNoDelay(true));
+        double interval = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CompletableFuture<Void> scheduled = new CompletableFuture<>();
+        long[] sent = { 0 };
+
+        // a late tick sends every overdue request at once, each still timed from its due time
+        vertx.setPeriodic(1, id -> {
+            long now = System.nanoTime();
+            while (true) {
+                long due = start + (long) (sent[0] * interval);
+                if (due > now || due >= end) {
+                    break;
+                }
+                send(client, port, due, due >= measureFrom);
+                sent[0]++;
+            }
+            if (start + (long) (sent[0] * interval) >= end) {
+                vertx.cancelTimer(id);
+                scheduled.complete(null);
+            }
+        });
+        scheduled.get(warmupSeconds + durationSeconds + 60, TimeUnit.SECONDS);
+        long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.sum() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        client.close();
+
+        double seconds = durationSeconds;
+        JsonObject report = new JsonObject().put("targetRate", rate).put("connections", connections)
+                .put("durationSeconds", durationSeconds).put("unfinished", inFlight.sum())
+                .put("total", total.toJson(seconds));
+        JsonObject kinds = new JsonObject();
+        for (Map.Entry<Kind, Stats> entry : stats.entrySet()) {
+            if (entry.getValue().latency.getCount() > 0) {
+                kinds.put(entry.getKey().label, entry.getValue().toJson(seconds));
+            }
+        }
+        return report.put("operations", kinds);
+    }
+
+    @SuppressWarnings("deprecation") // vertx 3 has no replacement for the response handler yet
+    private void send(HttpClient client, int port, long due, boolean measured) {
+        Kind kind = pick();
+        String uri = uri(kind);
+        inFlight.increment();
+        client.request(HttpMethod.GET, port, "localhost", uri).handler(response -> {
+            response.exceptionHandler(e -> done(kind, due, measured, -1));
+            response.endHandler(v -> done(kind, due, measured, response.statusCode()));
+        }).exceptionHandler(e -> done(kind, due, measured, -1)).end();
+    }
+
+    private void done(Kind kind, long due, boolean measured, int status) {
+        inFlight.decrement();
+        if (!measured) {
+            return;
+        }
+        long latency = System.nanoTime() - due;
+        Stats kindStats = stats.get(kind);
+        kindStats.record(latency, status == kind.expected);
+        total.record(latency, status == kind.expected);
+    }
+
+    private Kind pick() {
+        int choice = ThreadLocalRandom.current().nextInt(weightSum);
+        for (Kind kind : Kind.values()) {
+            choice -= weights[kind.ordinal()];
+            if (choice < 0) {
+                return kind;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private String uri(Kind kind) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String secret = secrets[random.nextInt(secrets.length)];
+        switch (kind) {
+        case SECRET:
+            return "/secret";
+        case TOKEN:
+            return "/token/" + secret + "?unixtime=" + (BASE_UNIXTIME + random.nextInt(1000000));
+        case CHECK_PASS:
+        case CHECK_FAIL: {
+            // every check uses its own interval, so the replay guard does not turn passes into failures
+            long unixtime = BASE_UNIXTIME + checkSteps.getAndIncrement() * 30;
+            int token;
+            try {
+                token = TOTP.getTokenValue(secret, unixtime * 1000);
+            } catch (InvalidKeyException e) {
+                throw new IllegalStateException(e);
+            }
+            if (kind == Kind.CHECK_FAIL) {
+                token = (token + 500000) % 1000000;
+            }
+            return "/check?secret=" + secret + "&token=" + token + "&unixtime=" + unixtime + "&window="
+                    + WINDOWS[random.nextInt(WINDOWS.length)];
+        }
+        default:
+            return "/image?secret=" + secret + "&label=load&size=" + IMAGE_SIZES[random.nextInt(IMAGE_SIZES.length)];
+        }
+    }
+
+    String format(JsonObject report) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "target %d req/s, %d connections, %d s measured, %d unfinished%n",
+                report.getInteger("targetRate"), report.getInteger("connections"),
+                report.getInteger("durationSeconds"), report.getLong("unfinished")));
+        out.append(String.format(Locale.ROOT, "%-10s %9s %9s %7s %9s %9s %9s %9s %9s %9s%n", "operation", "requests",
+                "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "p99.99 ms", "max ms"));
+        for (String operation : report.getJsonObject("operations").fieldNames()) {
+            row(out, operation, report.getJsonObject("operations").getJsonObject(operation));
+        }
+        row(out, "total", report.getJsonObject("total"));
+        return out.toString();
+    }
+
+    private static void row(StringBuilder out, String name, JsonObject stats) {
+        out.append(String.format(Locale.ROOT, "%-10s %9d %9.1f %7d", name, stats.getLong("requests"),
+                stats.getDouble("throughput"), stats.getLong("errors")));
+        JsonObject percentiles = stats.getJsonObject("latencyMillis");
+        for (String percentile : percentiles.fieldNames()) {
+            out.append(String.format(Locale.ROOT, " %9.3f", percentiles.getDouble(percentile)));
+        }
+        out.append(System.lineSeparator());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Latency and outcome counts of one request kind.
+     */
+    static final class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        void record(long nanos, boolean expected) {
+            latency.record(nanos);
+            if (!expected) {
+                errors.increment();
+            }
+        }
+
+        JsonObject toJson(double seconds) {
+            JsonObject percentiles = new JsonObject();
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                percentiles.put(PERCENTILE_NAMES[i], millis(latency.getValueAtQuantile(PERCENTILES[i])));
+            }
+            percentiles.put("max", millis(latency.getMax()));
+            return new JsonObject().put("requests", latency.getCount()).put("errors", errors.sum())
+                    .put("throughput", latency.getCount() / seconds).put("latencyMillis", percentiles);
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.josephcday.totp;
+
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Admission control in front of every operation. Requests are charged to a
+ * token bucket for the client address and, when the request carries a secret,
+ * to one for the secret, or for the user whose stored secret it uses. They are
+ * answered 429 before contract validation, decoding or any HMAC work. Each item
+ * of a /check/batch body is charged to its secret's bucket by
+ * {@link CheckBatchHandler}. Rejections are counted rather than logged, so a
+ * flood costs no more than the buckets it hits.
+ */
+public class AdmissionHandler implements Handler<RoutingContext> {
+    private static final String TOKEN_PATH = "/token/";
+    private static final String USERS_PATH = "/users/";
+    private static volatile AdmissionHandler shared; // null when disabled
+
+    private final RateLimiter clients;
+    private final RateLimiter secrets;
+
+    /**
+     * @param clients limiter keyed by client address, null to not limit clients
+     * @param secrets limiter keyed by secret, null to not limit secrets
+     */
+    public AdmissionHandler(RateLimiter clients, RateLimiter secrets) {
+        this.clients = clients;
+        this.secrets = secrets;
+    }
+
+    /**
+     * Sets up the process wide admission handler.
+     *
+     * @param slots       buckets kept by each limiter
+     * @param clientRate  requests per second per client address, 0 or less does
+     *                    not limit clients
+     * @param clientBurst requests a client address may make at once
+     * @param secretRate  requests per second per secret, 0 or less does not limit
+     *                    secrets
+     * @param secretBurst requests for a secret that may be made at once
+     */
+    public static void configure(int slots, int clientRate, int clientBurst, int secretRate, int secretBurst) {
+        RateLimiter clients = clientRate > 0 ? new RateLimiter(slots, clientRate, clientBurst) : null;
+        RateLimiter secrets = secretRate > 0 ? new RateLimiter(slots, secretRate, secretBurst) : null;
+        shared = clients != null || secrets != null ? new AdmissionHandler(clients, secrets) : null;
+    }
+
+    /**
+     * @return the process wide admission handler, or null when disabled
+     */
+    public static AdmissionHandler shared() {
+        return shared;
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        if (admit(routingContext)) {
+            routingContext.next();
+        }
+    }
+
+    /**
+     * Charges a request to its buckets, answering 429 when over the limit.
+     *
+     * @param routingContext request to admit
+     * @return true when admitted, false when the request was already answered
+     */
+    public boolean admit(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+        long wait = acquire(request.remoteAddress().host(), secrets != null ? secret(request) : null);
+        if (wait == 0) {
+            return true;
+        }
+        routingContext.response().putHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter(wait)));
+        Responses.end(routingContext.response(), 429, Responses.JSON, Responses.TOO_MANY_REQUESTS);
+        return false;
+    }
+
+    /**
+     * Charges a request to the bucket of its client and of its secret.
+     *
+     * @param client client address
+     * @param secret secret the request uses, null when it has none
+     * @return 0 when admitted, otherwise microseconds until the request would be
+     *         admitted
+     */
+    public long acquire(String client, String secret) {
+        long wait = 0;
+        if (clients != null) {
+            wait = clients.tryAcquire(client);
+        }
+        if (wait == 0 && secrets != null && secret != null) {
+            wait = secrets.tryAcquire(secret);
+        }
+        return wait;
+    }
+
+    /**
+     * Charges one use of a secret to its bucket only, for secrets that arrive in
+     * a request body.
+     *
+     * @param secret secret about to be used
+     * @return 0 when admitted, otherwise microseconds until it would be admitted
+     */
+    public long acquireSecret(String secret) {
+        return secrets != null ? secrets.tryAcquire(secret) : 0;
+    }
+
+    /**
+     * @param wait microseconds until a request would be admitted
+     * @return whole seconds for a Retry-After header, at least 1
+     */
+    static long retryAfter(long wait) {
+        return Math.max(1, TimeUnit.MICROSECONDS.toSeconds(wait + TimeUnit.SECONDS.toMicros(1) - 1));
+    }
+
+    /**
+     * Raw secret of a request, from the /token path or the secret query
+     * parameter, or the user id of a /users path, whose stored secret the
+     * request uses. Not validated, an invalid secret only costs its own bucket.
+     */
+    static String secret(HttpServerRequest request) {
+        String path = request.path();
+        if (path.startsWith(TOKEN_PATH)) {
+            return segment(path, TOKEN_PATH.length());
+        }
+        if (path.startsWith(USERS_PATH)) {
+            return "user:" + segment(path, USERS_PATH.length()); // cannot collide with a base32 secret
+        }
+        return request.getParam("secret");
+    }
+
+    private static String segment(String path, int start) {
+        int end = path.indexOf('/', start);
+        return path.substring(start, end < 0 ? path.length() : end);
+    }
+
+    public RateLimiter getClients() {
+        return clients;
+    }
+
+    public RateLimiter getSecrets() {
+        return secrets;
+    }
+}
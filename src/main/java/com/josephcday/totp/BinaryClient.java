@@ -0,0 +1,194 @@
+package com.josephcday.totp;
+
+import static com.josephcday.totp.BinaryProtocol.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+/**
+ * Client for the binary TCP protocol, see {@link BinaryProtocol}. Requests are
+ * pipelined over one connection, each is tagged with a request id and its
+ * handler is called when the response with that id arrives, whatever the
+ * order. Methods may be called from any thread.
+ *
+ * <pre>
+ * BinaryClient.connect(vertx, "totp.internal", 9090, ar -&gt; {
+ *     BinaryClient client = ar.result();
+ *     client.check("QB5UDBW7OQKYYDZU", 937384, BinaryProtocol.NOW, 1, check -&gt; ...);
+ * });
+ * </pre>
+ */
+public class BinaryClient {
+    private final NetClient netClient;
+    private final NetSocket socket;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Map<Integer, Handler<AsyncResult<Buffer>>> pending = new ConcurrentHashMap<>();
+
+    private BinaryClient(NetClient netClient, NetSocket socket) {
+        this.netClient = netClient;
+        this.socket = socket;
+        RecordParser parser = RecordParser.newFixed(LENGTH_SIZE, socket);
+        boolean[] body = { false };
+        parser.handler(frame -> {
+            if (!body[0]) {
+                body[0] = true;
+                parser.fixedSizeMode(frame.getInt(0));
+                return;
+            }
+            body[0] = false;
+            parser.fixedSizeMode(LENGTH_SIZE);
+            Handler<AsyncResult<Buffer>> handler = pending.remove(frame.getInt(1));
+            if (handler != null) {
+                handler.handle(Future.succeededFuture(frame));
+            }
+        });
+        socket.closeHandler(v -> failPending(new VertxException("connection closed")));
+        socket.exceptionHandler(this::failPending);
+    }
+
+    /**
+     * Connects to a binary protocol listener.
+     *
+     * @param vertx   vertx instance the connection runs on
+     * @param host    server host
+     * @param port    server binary port
+     * @param handler called with the connected client
+     */
+    public static void connect(Vertx vertx, String host, int port, Handler<AsyncResult<BinaryClient>> handler) {
+        NetClient netClient = vertx.createNetClient(new NetClientOptions().setTcpNoDelay(true));
+        netClient.connect(port, host, ar -> {
+            if (ar.succeeded()) {
+                handler.handle(Future.succeededFuture(new BinaryClient(netClient, ar.result())));
+            } else {
+                netClient.close();
+                handler.handle(Future.failedFuture(ar.cause()));
+            }
+        });
+    }
+
+    /**
+     * Checks a token, like GET /check.
+     *
+     * @param secret     the TOTP stored shared secret
+     * @param token      token to check
+     * @param timeMillis time to check at, {@link BinaryProtocol#NOW} for now
+     * @param window     intervals to also check before and after
+     * @param handler    called with the result, failed or replayed checks give
+     *                   {@link ValidationResult#FAILED}
+     */
+    public void check(String secret, int token, long timeMillis, int window,
+            Handler<AsyncResult<ValidationResult>> handler) {
+        Buffer request = request(CHECK, secret.length() + 14);
+        appendSecret(request, secret).appendInt(token).appendLong(timeMillis).appendByte((byte) window);
+        send(request, handler, (status, frame) -> status == FAILED ? ValidationResult.FAILED
+                : status == OK ? ValidationResult.passed(frame.getInt(RESPONSE_HEADER)) : null);
+    }
+
+    /**
+     * Gets a token, like GET /token/{secret}.
+     *
+     * @param secret     the TOTP stored shared secret
+     * @param timeMillis time to generate for, {@link BinaryProtocol#NOW} for now
+     * @param handler    called with the six digit token
+     */
+    public void token(String secret, long timeMillis, Handler<AsyncResult<String>> handler) {
+        Buffer request = request(TOKEN, secret.length() + 9);
+        appendSecret(request, secret).appendLong(timeMillis);
+        send(request, handler, (status, frame) -> status == OK
+                ? StringUtils.leftPad(Integer.toString(frame.getInt(RESPONSE_HEADER)), 6, '0')
+                : null);
+    }
+
+    /**
+     * Generates a secret, like GET /secret.
+     *
+     * @param length  secret length, 16, 26 or 32
+     * @param handler called with the secret
+     */
+    public void secret(int length, Handler<AsyncResult<String>> handler) {
+        Buffer request = request(SECRET, 1).appendByte((byte) length);
+        send(request, handler, (status, frame) -> status == OK
+                ? frame.getString(RESPONSE_HEADER + 1,
+                        RESPONSE_HEADER + 1 + frame.getUnsignedByte(RESPONSE_HEADER), "US-ASCII")
+                : null);
+    }
+
+    /**
+     * Closes the connection, failing requests still waiting for a response.
+     */
+    public void close() {
+        netClient.close();
+    }
+
+    /**
+     * Status of a failed response.
+     */
+    public static class StatusException extends VertxException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        public StatusException(int status) {
+            super("status " + status, true);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    private interface Decoder<T> {
+        /**
+         * @return the result, null when the status is a failure
+         */
+        T decode(short status, Buffer frame);
+    }
+
+    private Buffer request(byte op, int bodyLength) {
+        return Buffer.buffer(LENGTH_SIZE + REQUEST_HEADER + bodyLength).appendInt(REQUEST_HEADER + bodyLength)
+                .appendByte(op).appendInt(ids.incrementAndGet());
+    }
+
+    private static Buffer appendSecret(Buffer request, String secret) {
+        return request.appendByte((byte) secret.length()).appendBytes(secret.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private <T> void send(Buffer request, Handler<AsyncResult<T>> handler, Decoder<T> decoder) {
+        int id = request.getInt(LENGTH_SIZE + 1);
+        pending.put(id, ar -> {
+            if (ar.failed()) {
+                handler.handle(Future.failedFuture(ar.cause()));
+                return;
+            }
+            short status = ar.result().getShort(REQUEST_HEADER);
+            T result = decoder.decode(status, ar.result());
+            handler.handle(result != null ? Future.succeededFuture(result)
+                    : Future.failedFuture(new StatusException(status)));
+        });
+        socket.write(request);
+    }
+
+    private void failPending(Throwable cause) {
+        for (Integer id : pending.keySet()) {
+            Handler<AsyncResult<Buffer>> handler = pending.remove(id);
+            if (handler != null) {
+                handler.handle(Future.failedFuture(cause));
+            }
+        }
+    }
+}
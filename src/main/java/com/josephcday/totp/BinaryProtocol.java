@@ -0,0 +1,43 @@
+package com.josephcday.totp;
+
+/**
+ * Framing of the binary TCP protocol shared by {@link BinaryServer} and
+ * {@link BinaryClient}. All integers are big-endian.
+ *
+ * <pre>
+ * request  = length:u32 op:u8 id:u32 body
+ * response = length:u32 op:u8 id:u32 status:u16 body
+ *
+ * CHECK  request  secretLength:u8 secret:ascii token:u32 timeMillis:i64 window:u8
+ *        response offset:i32                     (status 200)
+ * TOKEN  request  secretLength:u8 secret:ascii timeMillis:i64
+ *        response token:u32                      (status 200)
+ * SECRET request  secretLength:u8
+ *        response secretLength:u8 secret:ascii   (status 200)
+ * </pre>
+ *
+ * The length counts the bytes after it. A timeMillis of -1 means now. Status
+ * codes follow the HTTP operations: 200, 400 for an invalid request, 401 for a
+ * failed or replayed check and 429 when admission control rejects the request.
+ * Responses echo the request id and may arrive in any order, so a client can
+ * pipeline many requests over one connection.
+ */
+public final class BinaryProtocol {
+    public static final byte CHECK = 1;
+    public static final byte TOKEN = 2;
+    public static final byte SECRET = 3;
+
+    public static final short OK = 200;
+    public static final short BAD_REQUEST = 400;
+    public static final short FAILED = 401;
+    public static final short TOO_MANY_REQUESTS = 429;
+
+    public static final int LENGTH_SIZE = 4; // frame length prefix
+    public static final int REQUEST_HEADER = 5; // op and id
+    public static final int RESPONSE_HEADER = 7; // op, id and status
+    public static final int MAX_FRAME = 256; // longest frame body accepted
+    public static final long NOW = -1; // timeMillis meaning the current time
+
+    private BinaryProtocol() {
+    }
+}
@@ -0,0 +1,185 @@
+package com.josephcday.totp;
+
+import static com.josephcday.totp.BinaryProtocol.*;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+/**
+ * Connection handler for the binary TCP protocol, see {@link BinaryProtocol}.
+ * Frames are split with a record parser that alternates between the length
+ * prefix and the frame body, each frame is answered as soon as it is parsed,
+ * and reading pauses while the socket's write queue is full. The check, token
+ * and secret operations run on the same {@link TOTP} engine, caches, replay
+ * guard and admission control as the HTTP operations, and are reported to the
+ * same {@link EventLog} and {@link Metrics}, as operations binaryCheck,
+ * binaryToken and binarySecret.
+ *
+ * A frame with an impossible length closes the connection, since the stream
+ * can no longer be split. Any other malformed frame is answered with status
+ * 400 and the connection stays usable.
+ */
+public class BinaryServer implements Handler<NetSocket> {
+
+    @Override
+    public void handle(NetSocket socket) {
+        String client = socket.remoteAddress().host();
+        RecordParser parser = RecordParser.newFixed(LENGTH_SIZE, socket);
+        boolean[] body = { false };
+        parser.handler(frame -> {
+            if (!body[0]) {
+                int length = frame.getInt(0);
+                if (length < REQUEST_HEADER || length > MAX_FRAME) {
+                    EventLog.log(EventLog.Event.BAD_FRAME, client, "frame length " + length);
+                    socket.close();
+                    return;
+                }
+                body[0] = true;
+                parser.fixedSizeMode(length);
+                return;
+            }
+            body[0] = false;
+            parser.fixedSizeMode(LENGTH_SIZE);
+            socket.write(process(frame, client));
+            if (socket.writeQueueFull()) {
+                parser.pause();
+                socket.drainHandler(v -> parser.resume());
+            }
+        });
+        parser.exceptionHandler(e -> socket.close());
+    }
+
+    /**
+     * Answers one request frame.
+     *
+     * @param frame  request without its length prefix
+     * @param client client address, for admission control
+     * @return response frame including its length prefix
+     */
+    static Buffer process(Buffer frame, String client) {
+        Metrics metrics = Metrics.shared();
+        if (metrics == null) {
+            return answer(frame, client);
+        }
+        long start = System.nanoTime();
+        TokenEngine engine = TokenEngine.get();
+        long before = engine.getGenerated();
+        Buffer response = answer(frame, client);
+        Metrics.Operation operation = metrics.operation(operationId(frame.getByte(0)));
+        operation.hmacs(engine.getGenerated() - before);
+        operation.end(response.getShort(LENGTH_SIZE + REQUEST_HEADER), System.nanoTime() - start);
+        return response;
+    }
+
+    private static Buffer answer(Buffer frame, String client) {
+        byte op = frame.getByte(0);
+        int id = frame.getInt(1);
+        try {
+            switch (op) {
+            case CHECK: {
+                int position = REQUEST_HEADER;
+                String secret = secret(frame, position);
+                position += 1 + secret.length();
+                int token = frame.getInt(position);
+                long timeMillis = time(frame.getLong(position + 4));
+                int window = frame.getUnsignedByte(position + 12);
+                if (position + 13 != frame.length() || token < 0 || token > Contract.CheckItem.MAX_TOKEN
+                        || window > Contract.CheckItem.MAX_WINDOW) {
+                    return response(op, id, BAD_REQUEST);
+                }
+                if (!admit(client, secret)) {
+                    return response(op, id, TOO_MANY_REQUESTS);
+                }
+                ValidationResult result = TOTP.checkOnce(secret, token, timeMillis, window);
+                if (!result.isValid()) {
+                    // same events as /check, the secret in the message is redacted
+                    EventLog.log(result.isReplay() ? EventLog.Event.REPLAYED : EventLog.Event.FAILED, client,
+                            "binaryCheck?secret=" + secret + "&token=" + token);
+                    return response(op, id, FAILED);
+                }
+                return finish(response(op, id, OK).appendInt(result.getOffset()));
+            }
+            case TOKEN: {
+                int position = REQUEST_HEADER;
+                String secret = secret(frame, position);
+                position += 1 + secret.length();
+                long timeMillis = time(frame.getLong(position));
+                if (position + 8 != frame.length()) {
+                    return response(op, id, BAD_REQUEST);
+                }
+                if (!admit(client, secret)) {
+                    return response(op, id, TOO_MANY_REQUESTS);
+                }
+                return finish(response(op, id, OK).appendInt(TOTP.getTokenValue(secret, timeMillis)));
+            }
+            case SECRET: {
+                int length = frame.getUnsignedByte(REQUEST_HEADER);
+                if (REQUEST_HEADER + 1 != frame.length() || !Contract.CheckItem.SECRET_LENGTHS.contains(length)) {
+                    return response(op, id, BAD_REQUEST);
+                }
+                if (!admit(client, null)) {
+                    return response(op, id, TOO_MANY_REQUESTS);
+                }
+                String secret = TOTP.b32Secret(length);
+                return finish(response(op, id, OK).appendByte((byte) length).appendString(secret));
+            }
+            default:
+                return response(op, id, BAD_REQUEST);
+            }
+        } catch (Exception e) {
+            // truncated frames and invalid secrets land here
+            return response(op, id, BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed secret, checked against the contract's pattern.
+     */
+    private static String secret(Buffer frame, int position) {
+        int length = frame.getUnsignedByte(position);
+        String secret = frame.getString(position + 1, position + 1 + length, "US-ASCII");
+        if (!Contract.CheckItem.SECRET.matcher(secret).matches()) {
+            throw new IllegalArgumentException("invalid secret");
+        }
+        return secret;
+    }
+
+    private static String operationId(byte op) {
+        switch (op) {
+        case CHECK:
+            return "binaryCheck";
+        case TOKEN:
+            return "binaryToken";
+        case SECRET:
+            return "binarySecret";
+        default:
+            return "binary";
+        }
+    }
+
+    private static long time(long timeMillis) {
+        if (timeMillis == NOW) {
+            return System.currentTimeMillis();
+        }
+        if (timeMillis < 0) {
+            throw new IllegalArgumentException("invalid time");
+        }
+        return timeMillis;
+    }
+
+    private static boolean admit(String client, String secret) {
+        AdmissionHandler admission = AdmissionHandler.shared();
+        return admission == null || admission.acquire(client, secret) == 0;
+    }
+
+    private static Buffer response(byte op, int id, short status) {
+        return Buffer.buffer(LENGTH_SIZE + RESPONSE_HEADER + 40).appendInt(RESPONSE_HEADER).appendByte(op)
+                .appendInt(id).appendShort(status);
+    }
+
+    private static Buffer finish(Buffer response) {
+        return response.setInt(0, response.length() - LENGTH_SIZE);
+    }
+}
@@ -0,0 +1,165 @@
+package com.josephcday.totp;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.core.parsetools.JsonParser;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Streaming handler for POST /check/batch. Accepts a JSON array or
+ * newline-delimited JSON of check items and validates each item as soon as it
+ * is parsed, writing one result line per item in request order. The request is
+ * paused while the response write queue is full, so neither side buffers the
+ * whole batch. Each item is charged to its secret's admission bucket before
+ * any HMAC work, and an item over the limit gets a 429 line.
+ *
+ * The body is read directly from the request, see {@link StreamingBodyHandler}.
+ */
+public class CheckBatchHandler implements Handler<RoutingContext> {
+    public static final String PATH = "/check/batch";
+
+    private final AdmissionHandler admission; // null when admission control is off
+
+    /**
+     * @param admission admission control charged per item, null for none
+     */
+    public CheckBatchHandler(AdmissionHandler admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+        HttpServerResponse response = routingContext.response();
+        response.setChunked(true).putHeader(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").setStatusCode(200);
+
+        JsonParser parser = JsonParser.newParser(request).objectValueMode();
+        int[] index = { 0 };
+        parser.handler(event -> {
+            if (event.type() == JsonEventType.START_ARRAY || event.type() == JsonEventType.END_ARRAY) {
+                return;
+            }
+            JsonObject result = check(event.isObject() ? event.objectValue() : null, admission).put("index",
+                    index[0]++);
+            response.write(result.encode() + "\n");
+            if (response.writeQueueFull()) {
+                request.pause();
+                response.drainHandler(v -> request.resume());
+            }
+        });
+        parser.exceptionHandler(e -> {
+            if (response.ended() || response.closed()) {
+                return; // the parser reports one malformed body more than once
+            }
+            // stop parsing, the rest of the body is read and discarded
+            parser.handler(null);
+            request.resume();
+            EventLog.log(EventLog.Event.BAD_REQUEST, request.remoteAddress().host(), PATH + ": " + e.getMessage());
+            response.end(new JsonObject().put("index", index[0]).put("status", 400)
+                    .put("message", "Malformed JSON").encode() + "\n");
+        });
+        parser.endHandler(v -> {
+            if (!response.ended()) {
+                response.end();
+            }
+        });
+    }
+
+    /**
+     * Validates one batch item, without admission control.
+     *
+     * @param item check item, null when the batch held something other than an
+     *             object
+     * @return result with status 200 and matched offset, 401 or 400
+     */
+    static JsonObject check(JsonObject item) {
+        return check(item, null);
+    }
+
+    /**
+     * Validates one batch item.
+     *
+     * @param item      check item, null when the batch held something other
+     *                  than an object
+     * @param admission admission control to charge the item's secret to, null
+     *                  for none
+     * @return result with status 200 and matched offset, 401, 400, or 429 with
+     *         the seconds to wait in retryAfter
+     */
+    static JsonObject check(JsonObject item, AdmissionHandler admission) {
+        JsonObject result = new JsonObject();
+        try {
+            if (item == null) {
+                throw new IllegalArgumentException("item is not an object");
+            }
+            String secret = item.getString("secret");
+            if (secret == null || !Contract.CheckItem.SECRET.matcher(secret).matches()) {
+                throw new IllegalArgumentException("invalid secret");
+            }
+            Long token = integer(item, "token", Contract.CheckItem.MAX_TOKEN);
+            Long millisec = integer(item, "millisec", Long.MAX_VALUE);
+            Long unixtime = integer(item, "unixtime", Integer.MAX_VALUE);
+            Long window = integer(item, "window", Contract.CheckItem.MAX_WINDOW);
+            if (token == null) {
+                throw new IllegalArgumentException("invalid token");
+            }
+
+            long wait = admission != null ? admission.acquireSecret(secret) : 0;
+            if (wait > 0) {
+                return result.put("status", 429).put("message", "Too Many Requests").put("retryAfter",
+                        AdmissionHandler.retryAfter(wait));
+            }
+
+            long timeMillis;
+            if (millisec != null) {
+                timeMillis = millisec;
+            } else if (unixtime != null) {
+                timeMillis = unixtime * 1000L;
+            } else {
+                timeMillis = System.currentTimeMillis();
+            }
+            ValidationResult checkToken = TOTP.checkOnce(secret, token.intValue(), timeMillis,
+                    window != null ? window.intValue() : 0);
+            if (checkToken.isValid()) {
+                result.put("status", 200).put("offset", checkToken.getOffset());
+            } else {
+                result.put("status", 401);
+            }
+        } catch (Exception e) {
+            // ClassCastException from a mistyped field lands here too
+            result.put("status", 400).put("message", "Bad Request");
+        }
+        return result;
+    }
+
+    /**
+     * Reads an integer field of an item as the contract's integer formats do.
+     * JsonObject.getInteger would narrow fractions and larger numbers instead.
+     *
+     * @param item  check item
+     * @param field field name
+     * @param max   largest accepted value, the smallest is 0
+     * @return the value, null when the field is absent
+     * @throws IllegalArgumentException when the value is not an integer from 0
+     *                                  to max
+     */
+    private static Long integer(JsonObject item, String field, long max) {
+        Object value = item.getValue(field);
+        if (value == null) {
+            return null;
+        }
+        // Jackson decodes integers as Integer or Long, and larger ones as BigInteger
+        if (!(value instanceof Integer || value instanceof Long)) {
+            throw new IllegalArgumentException("invalid " + field);
+        }
+        long number = ((Number) value).longValue();
+        if (number < 0 || number > max) {
+            throw new IllegalArgumentException("invalid " + field);
+        }
+        return number;
+    }
+}
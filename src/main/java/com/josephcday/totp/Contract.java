@@ -0,0 +1,119 @@
+package com.josephcday.totp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.parameters.Parameter;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import io.swagger.v3.parser.ResolverCache;
+import io.swagger.v3.parser.core.models.SwaggerParseResult;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.api.contract.RouterFactoryException;
+import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
+import io.vertx.ext.web.api.contract.openapi3.impl.OpenAPI3RouterFactoryImpl;
+import io.vertx.ext.web.api.contract.openapi3.impl.OpenApi3Utils;
+
+/**
+ * The OpenAPI contract, totp.yaml, read from the classpath so the fat jar runs
+ * from any directory. It is parsed once per process and every verticle
+ * instance builds its router factory from the parsed model, which the router
+ * factory only reads.
+ *
+ * Parsing and building the factory repeat what OpenAPI3RouterFactory.create
+ * does in vertx-web-api-contract 3.8.5, using its internal OpenApi3Utils and
+ * OpenAPI3RouterFactoryImpl. Re-check both when upgrading vertx,
+ * ContractTest fails on any other version.
+ */
+public final class Contract {
+    static final String RESOURCE = "totp.yaml";
+    private static OpenAPI parsed; // guarded by Contract.class
+
+    private Contract() {
+    }
+
+    /**
+     * Parses the contract on first use. Blocks, call it off the event loop.
+     *
+     * @return the parsed contract
+     * @throws RouterFactoryException when the contract is missing or invalid
+     */
+    public static synchronized OpenAPI get() {
+        if (parsed == null) {
+            SwaggerParseResult result = new OpenAPIV3Parser().readContents(read(), null,
+                    OpenApi3Utils.getParseOptions());
+            if (!result.getMessages().isEmpty() || result.getOpenAPI() == null) {
+                throw RouterFactoryException.createSpecInvalidException(String.join(", ", result.getMessages()));
+            }
+            parsed = result.getOpenAPI();
+        }
+        return parsed;
+    }
+
+    /**
+     * Creates a router factory for one verticle instance, the same as
+     * {@link OpenAPI3RouterFactory#create} without reading the contract again.
+     *
+     * @param vertx   vertx instance of the verticle
+     * @param openAPI contract from {@link #get()}
+     * @return a new router factory
+     */
+    public static OpenAPI3RouterFactory routerFactory(Vertx vertx, OpenAPI openAPI) {
+        return new OpenAPI3RouterFactoryImpl(vertx, openAPI, new ResolverCache(openAPI, null, null));
+    }
+
+    /**
+     * Bounds of a check item for the checks the router does not validate, the
+     * /check/batch items and the binary protocol. Read from the Check_Item
+     * schema and the lengths /secret issues when first used.
+     */
+    static final class CheckItem {
+        static final Pattern SECRET;
+        static final int MAX_TOKEN;
+        static final int MAX_WINDOW;
+        static final Set<Integer> SECRET_LENGTHS;
+
+        static {
+            OpenAPI contract = get();
+            Schema<?> item = contract.getComponents().getSchemas().get("Check_Item");
+            SECRET = Pattern.compile(((Schema<?>) item.getProperties().get("secret")).getPattern());
+            MAX_TOKEN = ((Schema<?>) item.getProperties().get("token")).getMaximum().intValueExact();
+            MAX_WINDOW = ((Schema<?>) item.getProperties().get("window")).getMaximum().intValueExact();
+            Set<Integer> lengths = new HashSet<>();
+            for (Parameter parameter : contract.getPaths().get("/secret").getGet().getParameters()) {
+                if ("length".equals(parameter.getName())) {
+                    for (Object length : parameter.getSchema().getEnum()) {
+                        lengths.add(((Number) length).intValue());
+                    }
+                }
+            }
+            SECRET_LENGTHS = Collections.unmodifiableSet(lengths);
+        }
+
+        private CheckItem() {
+        }
+    }
+
+    private static String read() {
+        try (InputStream in = Contract.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw RouterFactoryException.createSpecNotExistsException(RESOURCE);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw RouterFactoryException.createSpecNotExistsException(RESOURCE);
+        }
+    }
+}
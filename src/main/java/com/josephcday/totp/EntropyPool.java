@@ -0,0 +1,68 @@
+package com.josephcday.totp;
+
+import java.security.SecureRandom;
+
+/**
+ * Pooled entropy for secret generation. One SecureRandom is shared by the whole
+ * process, and each thread draws from it a block of bytes at a time, handing out
+ * 5 bits per base32 character.
+ *
+ * Pools are not thread safe, always obtain one with {@link #get()}.
+ */
+public final class EntropyPool {
+    private static final int BLOCK_LENGTH = 512; // bytes drawn from SecureRandom at a time
+    private static final SecureRandom RANDOM = new SecureRandom();
+    static final ThreadLocal<EntropyPool> POOLS = new ThreadLocal<>(); // also lent out by ThreadStatePool
+
+    private final byte[] block = new byte[BLOCK_LENGTH];
+    private int position = BLOCK_LENGTH;
+    private int bits; // unused random bits, low 'bitCount' bits are valid
+    private int bitCount;
+
+    private EntropyPool() {
+    }
+
+    /**
+     * Gets the entropy pool bound to the calling thread, creating it on first use.
+     *
+     * @return this thread's entropy pool
+     */
+    public static EntropyPool get() {
+        EntropyPool pool = POOLS.get();
+        if (pool == null) {
+            pool = new EntropyPool();
+            POOLS.set(pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Fills a char array with random base32 characters.
+     *
+     * @param chars  output
+     * @param offset first index to fill
+     * @param length number of characters
+     */
+    public void base32(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            chars[i] = TOTP.BASE32_CHAR_ARRAY[next5()];
+        }
+    }
+
+    /**
+     * @return 5 random bits
+     */
+    private int next5() {
+        if (bitCount < 5) {
+            if (position == BLOCK_LENGTH) {
+                RANDOM.nextBytes(block);
+                position = 0;
+            }
+            bits = bits << 8 | (block[position] & 0xFF);
+            block[position++] = 0;
+            bitCount += 8;
+        }
+        bitCount -= 5;
+        return (bits >>> bitCount) & 0x1F;
+    }
+}
@@ -14,10 +14,75 @@ public class EnvVars {
 
     public static int _appPort = 8080; // application port the service listens for main
     public static int _timeout = 2; // seconds before timeout and hangup
+    public static int _keyCacheSize = 0; // secrets kept with prepared keys, 0 disables
+    public static int _keyCacheTtl = 300; // seconds a prepared key stays cached
+    public static int _tokenCacheSize = 0; // tokens cached for the current interval, 0 disables
+    public static int _replayCapacity = 0; // accepted tokens remembered per interval, 0 disables
+    public static int _replayWindow = 120; // intervals tracked before and after now, the largest check window
+    public static int _qrCacheSize = 0; // rendered QR images kept, 0 disables
+    public static int _instances = 0; // verticle instances deployed, 0 for one per event loop
+    public static int _eventLoops = 0; // event loop threads, 0 for the vertx default of 2 per core
+    public static int _workerPoolSize = 0; // worker threads, 0 for the vertx default
+    public static boolean _nativeTransport = false; // epoll with SO_REUSEPORT and TCP fast open when available
+    // operationId=eventloop|worker|virtual[:threads[:queue]],...
+    public static String _execution = "imageGET=worker,userSecretPUT=worker,userSecretDELETE=worker";
+    public static int _operationThreads = 4; // worker threads or concurrent virtual threads per offloaded operation
+    public static int _operationQueue = 256; // requests waiting per offloaded operation before 503
+    public static int _admissionSlots = 65536; // rate limit buckets kept per key type
+    public static int _clientRate = 0; // requests per second per client address, 0 disables
+    public static int _clientBurst = 100; // requests a client address may make at once
+    public static int _secretRate = 0; // requests per second per secret, 0 disables
+    public static int _secretBurst = 10; // requests for one secret that may be made at once
+    public static boolean _fastPath = false; // precompiled parameter parsing for checkGET and tokenGET
+    public static int _compressionThreshold = 1024; // smallest compressible response body gzipped, in bytes
+    public static int _binaryPort = 0; // port of the binary TCP protocol, 0 disables
+    public static int _binaryIdleTimeout = 300; // seconds before an idle binary connection is closed
+    public static boolean _metrics = true; // latency and outcome metrics served on /metrics
+    public static int _logBuffer = 8192; // request events buffered for the log writer, 0 logs synchronously
+    public static int _logRate = 100; // request events logged per second per event type, 0 for no limit
+    public static String _logEvents = ""; // per event type sampling, event=sample[:rate],...
+    public static String _storePath = ""; // embedded secret store log file, empty disables /users
+    public static String _storeKeyFile = ""; // file holding the base64 AES key of the secret store
+    public static int _userFailures = 5; // failed /users/{id}/check a user may make before 429, 0 disables
+    public static int _userFailureInterval = 300; // seconds until a user may fail one more check
+    public static boolean _warmUp = true; // load and run the QR encoders in the background at startup
+    public static boolean _exitAfterStart = false; // stop once started, for startup timing and AppCDS training
 
     public EnvVars() {
         _appPort = (Integer) map("TOTP_PORT", _appPort);
         _timeout = (Integer) map("TOTP_TIMEOUT", _timeout);
+        _keyCacheSize = (Integer) map("TOTP_KEY_CACHE_SIZE", _keyCacheSize);
+        _keyCacheTtl = (Integer) map("TOTP_KEY_CACHE_TTL", _keyCacheTtl);
+        _tokenCacheSize = (Integer) map("TOTP_TOKEN_CACHE_SIZE", _tokenCacheSize);
+        _replayCapacity = (Integer) map("TOTP_REPLAY_CAPACITY", _replayCapacity);
+        _replayWindow = (Integer) map("TOTP_REPLAY_WINDOW", _replayWindow);
+        _qrCacheSize = (Integer) map("TOTP_QR_CACHE_SIZE", _qrCacheSize);
+        _instances = (Integer) map("TOTP_INSTANCES", _instances);
+        _eventLoops = (Integer) map("TOTP_EVENT_LOOPS", _eventLoops);
+        _workerPoolSize = (Integer) map("TOTP_WORKER_POOL_SIZE", _workerPoolSize);
+        _nativeTransport = (Boolean) map("TOTP_NATIVE_TRANSPORT", _nativeTransport);
+        _execution = (String) map("TOTP_EXECUTION", _execution);
+        _operationThreads = (Integer) map("TOTP_OPERATION_THREADS", _operationThreads);
+        _operationQueue = (Integer) map("TOTP_OPERATION_QUEUE", _operationQueue);
+        _admissionSlots = (Integer) map("TOTP_ADMISSION_SLOTS", _admissionSlots);
+        _clientRate = (Integer) map("TOTP_CLIENT_RATE", _clientRate);
+        _clientBurst = (Integer) map("TOTP_CLIENT_BURST", _clientBurst);
+        _secretRate = (Integer) map("TOTP_SECRET_RATE", _secretRate);
+        _secretBurst = (Integer) map("TOTP_SECRET_BURST", _secretBurst);
+        _fastPath = (Boolean) map("TOTP_FAST_PATH", _fastPath);
+        _compressionThreshold = (Integer) map("TOTP_COMPRESSION_THRESHOLD", _compressionThreshold);
+        _binaryPort = (Integer) map("TOTP_BINARY_PORT", _binaryPort);
+        _binaryIdleTimeout = (Integer) map("TOTP_BINARY_IDLE_TIMEOUT", _binaryIdleTimeout);
+        _metrics = (Boolean) map("TOTP_METRICS", _metrics);
+        _logBuffer = (Integer) map("TOTP_LOG_BUFFER", _logBuffer);
+        _logRate = (Integer) map("TOTP_LOG_RATE", _logRate);
+        _logEvents = (String) map("TOTP_LOG_EVENTS", _logEvents);
+        _storePath = (String) map("TOTP_STORE_PATH", _storePath);
+        _storeKeyFile = (String) map("TOTP_STORE_KEY_FILE", _storeKeyFile);
+        _userFailures = (Integer) map("TOTP_USER_FAILURES", _userFailures);
+        _userFailureInterval = (Integer) map("TOTP_USER_FAILURE_INTERVAL", _userFailureInterval);
+        _warmUp = (Boolean) map("TOTP_WARM_UP", _warmUp);
+        _exitAfterStart = (Boolean) map("TOTP_EXIT_AFTER_START", _exitAfterStart);
     }
 
     public static void init() {
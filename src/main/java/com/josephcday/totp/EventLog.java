@@ -0,0 +1,390 @@
+package com.josephcday.totp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.net.SocketAddress;
+
+/**
+ * Request event log kept off the event loop. Failed checks, bad requests and
+ * similar events are sampled and rate limited per event type, then handed to a
+ * background writer through a bounded lock-free ring buffer. Publishing an
+ * event is a CAS and a few array stores; when the buffer is full the event is
+ * dropped and counted rather than blocking the caller.
+ *
+ * The writer prints one JSON object per line, such as
+ * {@code {"time":"...","event":"failed","client":"10.0.0.1","message":"/check?secret=*1f2e3d4c&token=1"}}.
+ * Secrets in request URIs are replaced by a keyed fingerprint, so repeated
+ * attempts on one secret can still be correlated.
+ *
+ * Sampling and rate limits are parsed from a spec such as
+ * {@code failed=10:50,badRequest=1:20}, where each entry is
+ * {@code event=sample[:rate]}: one in sample events is kept, and at most rate
+ * events per second are logged, 0 for no limit.
+ */
+public final class EventLog {
+    private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+    private static final Pattern SECRET = Pattern.compile("(/token/|[?&]secret=)([^/?&#]*)");
+    private static final long SEED = new SecureRandom().nextLong(); // per process fingerprint key
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static volatile EventLog shared; // null logs synchronously
+
+    private final Policy[] policies = new Policy[Event.values().length];
+    private final long origin = System.nanoTime();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private Thread writer; // null when writing synchronously, set before the log is shared
+    private volatile boolean stopped;
+
+    // ring buffer, slot i holds position p when sequence == p + 1, free when
+    // sequence == p
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final Event[] events;
+    private final long[] times;
+    private final String[] clients;
+    private final String[] messages;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // writer thread only
+
+    /**
+     * Kinds of logged events.
+     */
+    public enum Event {
+        FAILED("failed"), REPLAYED("replayed"), BAD_REQUEST("badRequest"), NOT_FOUND("notFound"),
+        OVERLOADED("overloaded"), BAD_FRAME("badFrame");
+
+        private final String label;
+
+        Event(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    EventLog(int capacity, String spec, int rate) {
+        Map<String, Policy> parsed = parse(spec, rate);
+        for (Event event : Event.values()) {
+            Policy policy = parsed.get(event.label);
+            policies[event.ordinal()] = policy != null ? policy : new Policy(1, rate);
+        }
+        int size = capacity > 0 ? Integer.highestOneBit(Math.max(2, capacity) - 1) << 1 : 0;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        events = new Event[size];
+        times = new long[size];
+        clients = new String[size];
+        messages = new String[size];
+    }
+
+    /**
+     * Sets up the process wide event log. The writer of the log it replaces
+     * stops after writing what that log buffered.
+     *
+     * @param capacity events buffered for the writer, 0 or less writes events
+     *                 synchronously through the logger
+     * @param spec     comma separated {@code event=sample[:rate]} entries
+     * @param rate     default events logged per second per event type, 0 or
+     *                 less for no limit
+     */
+    public static void configure(int capacity, String spec, int rate) {
+        EventLog log = new EventLog(capacity, spec, rate);
+        if (capacity > 0) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8));
+            log.writer = new Thread(() -> log.run(out), "totp-event-log");
+            log.writer.setDaemon(true);
+            log.writer.start();
+        }
+        EventLog old;
+        synchronized (EventLog.class) {
+            old = shared;
+            shared = log;
+        }
+        if (old != null) {
+            old.stop();
+        }
+    }
+
+    /**
+     * Stops the writer of a replaced log once it has written what is buffered.
+     */
+    private void stop() {
+        stopped = true;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return the writer thread, null when events are written synchronously
+     */
+    Thread getWriter() {
+        return writer;
+    }
+
+    /**
+     * @return the process wide event log, or null before it is configured
+     */
+    public static EventLog shared() {
+        return shared;
+    }
+
+    /**
+     * Logs an event about a request.
+     *
+     * @param event   event type
+     * @param request request the event is about, its URI is the message
+     */
+    public static void log(Event event, HttpServerRequest request) {
+        SocketAddress address = request.remoteAddress();
+        log(event, address != null ? address.host() : null, request.uri());
+    }
+
+    /**
+     * Logs an event.
+     *
+     * @param event   event type
+     * @param client  client address, may be null
+     * @param message request URI or description, secrets in it are redacted
+     */
+    public static void log(Event event, String client, String message) {
+        EventLog log = shared;
+        if (log == null) {
+            logger.warn(event.label + ": " + redact(message));
+        } else {
+            log.publish(event, client, message);
+        }
+    }
+
+    /**
+     * Samples, rate limits and buffers an event.
+     *
+     * @return true when the event was buffered or written
+     */
+    boolean publish(Event event, String client, String message) {
+        Policy policy = policies[event.ordinal()];
+        if (policy.sample > 1 && policy.seen.getAndIncrement() % policy.sample != 0) {
+            sampled.increment();
+            return false;
+        }
+        if (policy.rate > 0 && !policy.acquire((System.nanoTime() - origin) / TimeUnit.SECONDS.toNanos(1))) {
+            limited.increment();
+            return false;
+        }
+        if (mask < 0) {
+            logger.warn(event.label + ": " + redact(message));
+            return true;
+        }
+
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events[index] = event;
+                    times[index] = System.currentTimeMillis();
+                    clients[index] = client;
+                    messages[index] = message;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                dropped.increment(); // the writer has not freed this slot yet
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Writes every buffered event. Called by the writer thread only.
+     *
+     * @param out where to write the JSON lines
+     * @return number of events written
+     * @throws IOException when writing fails
+     */
+    int drain(Writer out) throws IOException {
+        int written = 0;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            JsonObject line = new JsonObject().put("time", Instant.ofEpochMilli(times[index]).toString())
+                    .put("event", events[index].label);
+            if (clients[index] != null) {
+                line.put("client", clients[index]);
+            }
+            line.put("message", redact(messages[index]));
+            clients[index] = null;
+            messages[index] = null;
+            sequences.set(index, head + mask + 1);
+            head++;
+            out.write(line.encode());
+            out.write('\n');
+            written++;
+        }
+        if (written > 0) {
+            out.flush();
+        }
+        return written;
+    }
+
+    private void run(Writer out) {
+        while (!stopped) {
+            try {
+                if (drain(out) == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS); // stderr went away, keep freeing slots
+            }
+        }
+        try {
+            drain(out); // events published just before the log was replaced
+        } catch (IOException e) {
+            // stderr went away, nothing left to free slots for
+        }
+    }
+
+    /**
+     * Replaces secrets in a request URI with a keyed fingerprint.
+     *
+     * @param message request URI or other message
+     * @return message without secrets
+     */
+    static String redact(String message) {
+        if (message == null) {
+            return "";
+        }
+        Matcher matcher = SECRET.matcher(message);
+        if (!matcher.find()) {
+            return message;
+        }
+        StringBuffer redacted = new StringBuffer(message.length());
+        do {
+            matcher.appendReplacement(redacted, "");
+            redacted.append(matcher.group(1)).append('*').append(fingerprint(matcher.group(2)));
+        } while (matcher.find());
+        return matcher.appendTail(redacted).toString();
+    }
+
+    private static String fingerprint(String secret) {
+        long hash = (secret.hashCode() ^ SEED) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return String.format("%08x", (int) hash);
+    }
+
+    static Map<String, Policy> parse(String spec, int rate) {
+        Map<String, Policy> parsed = new HashMap<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return parsed;
+        }
+        for (String entry : spec.split(",")) {
+            String[] event = entry.trim().split("=", 2);
+            if (event.length != 2) {
+                throw new IllegalArgumentException("log entry is not event=sample: " + entry);
+            }
+            boolean known = false;
+            for (Event value : Event.values()) {
+                known |= value.label.equals(event[0].trim());
+            }
+            if (!known) {
+                throw new IllegalArgumentException("unknown log event: " + entry);
+            }
+            String[] fields = event[1].trim().split(":");
+            int sample = Integer.parseInt(fields[0]);
+            int limit = fields.length > 1 && !fields[1].isEmpty() ? Integer.parseInt(fields[1]) : rate;
+            if (sample < 1) {
+                throw new IllegalArgumentException("log sample out of range: " + entry);
+            }
+            parsed.put(event[0].trim(), new Policy(sample, limit));
+        }
+        return parsed;
+    }
+
+    /**
+     * @return events skipped by sampling
+     */
+    public long getSampled() {
+        return sampled.sum();
+    }
+
+    /**
+     * @return events skipped by the per type rate limit
+     */
+    public long getLimited() {
+        return limited.sum();
+    }
+
+    /**
+     * @return events dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Sampling and rate limit of one event type.
+     */
+    static final class Policy {
+        private final int sample;
+        private final int rate;
+        private final AtomicLong seen = new AtomicLong();
+        private final AtomicLong window = new AtomicLong(); // second << 32 | events logged in it
+
+        Policy(int sample, int rate) {
+            this.sample = sample;
+            this.rate = rate;
+        }
+
+        private boolean acquire(long second) {
+            while (true) {
+                long current = window.get();
+                long count = current >>> 32 == second ? current & 0xFFFFFFFFL : 0;
+                if (count >= rate) {
+                    return false;
+                }
+                if (window.compareAndSet(current, second << 32 | (count + 1))) {
+                    return true;
+                }
+            }
+        }
+
+        int getSample() {
+            return sample;
+        }
+
+        int getRate() {
+            return rate;
+        }
+    }
+}
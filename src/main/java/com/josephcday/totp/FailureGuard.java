@@ -0,0 +1,168 @@
+package com.josephcday.totp;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits failed checks of a stored secret, so /users/{id}/check cannot be used
+ * to guess a user's tokens.
+ *
+ * Each failed check is charged to a token bucket for the user (GCRA, as in
+ * {@link RateLimiter}). Once 'failures' checks have failed, checks of that user
+ * are rejected without being checked, and one more is allowed per 'interval'.
+ * Buckets are keyed by the full user id, so users never share one.
+ *
+ * The table is preallocated and split into segments, each a short run of
+ * slots under its own lock; only user checks reach it, after the admission
+ * buckets. A bucket whose arrival time has passed holds nothing and is
+ * reclaimed. The guard fails closed: when every slot a user could take holds
+ * another user's active bucket, the user's checks are rejected until one of
+ * them refills, rather than checked without a count. Filling the table then
+ * locks out users, it never allows unlimited guessing.
+ */
+public final class FailureGuard {
+    private static final int SEGMENT_SIZE = 8; // slots a user may take
+    private static volatile FailureGuard shared; // null when disabled
+
+    private final long[] users;
+    private final long[] arrivals; // microseconds, 0 marks an empty slot
+    private final Object[] locks; // one per segment
+    private final int segmentMask;
+    private final long interval; // microseconds until one more failure is allowed
+    private final long tolerance; // how far ahead of now the arrival time may run
+    private final long origin = System.nanoTime() - TimeUnit.SECONDS.toNanos(1); // keeps now above 0
+    private final long seed = new SecureRandom().nextLong();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder full = new LongAdder();
+
+    /**
+     * @param slots    buckets kept, rounded up to a power of two
+     * @param failures failed checks a user may make before checks are rejected
+     * @param interval seconds until one more failed check is allowed
+     */
+    public FailureGuard(int slots, int failures, int interval) {
+        int segments = Math.max(1, Integer.highestOneBit(Math.max(SEGMENT_SIZE, slots) - 1) * 2 / SEGMENT_SIZE);
+        this.users = new long[segments * SEGMENT_SIZE];
+        this.arrivals = new long[segments * SEGMENT_SIZE];
+        this.locks = new Object[segments];
+        for (int i = 0; i < segments; i++) {
+            locks[i] = new Object();
+        }
+        this.segmentMask = segments - 1;
+        this.interval = TimeUnit.SECONDS.toMicros(Math.max(1, interval));
+        this.tolerance = this.interval * Math.max(1, failures);
+    }
+
+    /**
+     * Sets up the process wide guard used by the user check operation.
+     *
+     * @param slots    buckets kept
+     * @param failures failed checks a user may make before checks are rejected,
+     *                 0 or less disables the guard
+     * @param interval seconds until one more failed check is allowed
+     */
+    public static void configure(int slots, int failures, int interval) {
+        shared = failures > 0 ? new FailureGuard(slots, failures, interval) : null;
+    }
+
+    /**
+     * @return the process wide guard, or null when disabled
+     */
+    public static FailureGuard shared() {
+        return shared;
+    }
+
+    /**
+     * @param user user id
+     * @return 0 when the user's secret may be checked, otherwise microseconds
+     *         until it may
+     */
+    public long locked(long user) {
+        return locked(user, now());
+    }
+
+    long locked(long user, long now) {
+        int segment = segment(user);
+        int base = segment * SEGMENT_SIZE;
+        long soonest = Long.MAX_VALUE;
+        synchronized (locks[segment]) {
+            for (int slot = base; slot < base + SEGMENT_SIZE; slot++) {
+                long arrival = arrivals[slot];
+                if (arrival > now && users[slot] == user) {
+                    long wait = arrival + interval - now - tolerance;
+                    if (wait > 0) {
+                        rejected.increment();
+                    }
+                    return Math.max(0, wait);
+                }
+                if (arrival <= now) {
+                    soonest = 0; // a failure could still be counted, keep looking for the user
+                } else {
+                    soonest = Math.min(soonest, arrival - now);
+                }
+            }
+        }
+        if (soonest > 0) {
+            rejected.increment();
+        }
+        return soonest;
+    }
+
+    /**
+     * Charges a failed check to the user's bucket.
+     *
+     * @param user user id
+     */
+    public void failed(long user) {
+        failed(user, now());
+    }
+
+    void failed(long user, long now) {
+        int segment = segment(user);
+        int base = segment * SEGMENT_SIZE;
+        synchronized (locks[segment]) {
+            int free = -1;
+            for (int slot = base; slot < base + SEGMENT_SIZE; slot++) {
+                if (arrivals[slot] > now && users[slot] == user) {
+                    arrivals[slot] += interval;
+                    return;
+                }
+                if (free < 0 && arrivals[slot] <= now) {
+                    free = slot; // empty, or a bucket that has refilled
+                }
+            }
+            if (free < 0) {
+                full.increment(); // taken since locked(), the user's next check is rejected
+                return;
+            }
+            users[free] = user;
+            arrivals[free] = now + interval;
+        }
+    }
+
+    private int segment(long user) {
+        long h = (user ^ seed) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        h *= 0x94D049BB133111EBL;
+        return (int) (h ^ (h >>> 29)) & segmentMask;
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - origin);
+    }
+
+    /**
+     * @return checks rejected, for the user's failures or a full table
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return failures that found no slot for their user
+     */
+    public long getFull() {
+        return full.sum();
+    }
+}
@@ -0,0 +1,300 @@
+package com.josephcday.totp;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.parameters.Parameter;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.api.validation.ParameterLocation;
+import io.vertx.ext.web.api.validation.ValidationException;
+import io.vertx.ext.web.api.validation.ValidationException.ValidationExceptionFactory;
+
+/**
+ * Precompiled parameter parsing for one GET operation, used in place of the
+ * router factory's per-request validation on hot operations.
+ *
+ * The parameters, patterns and bounds are read from the operation in
+ * totp.yaml, so the contract stays the single source of truth. Path and query
+ * parameters are read straight from the request path and raw query string into
+ * arrays indexed like the contract's parameter list, with no intermediate maps,
+ * and failures raise the same ValidationException messages the contract
+ * validation produces. Only string parameters with a pattern and integer
+ * parameters with bounds are supported, anything else in the operation fails
+ * compilation so the fast path cannot silently drift from the contract.
+ */
+public final class FastPath {
+    private final String operationId;
+    private final String route; // vertx route path, e.g. /token/:secret
+    private final String[] names;
+    private final boolean[] inPath;
+    private final int[] pathSegments; // segment index of path parameters
+    private final boolean[] required;
+    private final boolean[] integer; // integer parameter, otherwise string
+    private final boolean[] int64;
+    private final Pattern[] patterns;
+    private final BigDecimal[] minimums;
+    private final BigDecimal[] maximums;
+    private final boolean[] exclusiveMinimums;
+    private final boolean[] exclusiveMaximums;
+
+    private FastPath(String operationId, String template, List<Parameter> parameters) {
+        this.operationId = operationId;
+        int count = parameters.size();
+        names = new String[count];
+        inPath = new boolean[count];
+        pathSegments = new int[count];
+        required = new boolean[count];
+        integer = new boolean[count];
+        int64 = new boolean[count];
+        patterns = new Pattern[count];
+        minimums = new BigDecimal[count];
+        maximums = new BigDecimal[count];
+        exclusiveMinimums = new boolean[count];
+        exclusiveMaximums = new boolean[count];
+
+        String[] segments = template.split("/");
+        StringBuilder vertxPath = new StringBuilder();
+        for (int s = 1; s < segments.length; s++) {
+            String segment = segments[s];
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                vertxPath.append("/:").append(segment, 1, segment.length() - 1);
+            } else {
+                vertxPath.append('/').append(segment);
+            }
+        }
+        route = vertxPath.toString();
+
+        for (int i = 0; i < count; i++) {
+            Parameter parameter = parameters.get(i);
+            Schema<?> schema = parameter.getSchema();
+            names[i] = parameter.getName();
+            if ("path".equals(parameter.getIn())) {
+                inPath[i] = true;
+                pathSegments[i] = indexOf(segments, "{" + names[i] + "}");
+            } else if (!"query".equals(parameter.getIn())) {
+                throw unsupported(parameter, "location " + parameter.getIn());
+            }
+            required[i] = inPath[i] || Boolean.TRUE.equals(parameter.getRequired());
+            if (schema == null || schema.getType() == null) {
+                throw unsupported(parameter, "schema");
+            }
+            if ("integer".equals(schema.getType())) {
+                integer[i] = true;
+                int64[i] = "int64".equals(schema.getFormat());
+                minimums[i] = schema.getMinimum();
+                maximums[i] = schema.getMaximum();
+                exclusiveMinimums[i] = Boolean.TRUE.equals(schema.getExclusiveMinimum());
+                exclusiveMaximums[i] = Boolean.TRUE.equals(schema.getExclusiveMaximum());
+            } else if ("string".equals(schema.getType()) && schema.getEnum() == null && schema.getFormat() == null) {
+                patterns[i] = schema.getPattern() != null ? Pattern.compile(schema.getPattern()) : null;
+            } else {
+                throw unsupported(parameter, "type " + schema.getType());
+            }
+        }
+    }
+
+    /**
+     * Compiles the parameter parsing of a GET operation in the contract.
+     *
+     * @param openAPI     parsed contract
+     * @param operationId operation to compile
+     * @return fast path for the operation
+     * @throws IllegalArgumentException when the operation is missing, not a GET,
+     *                                  or uses parameters the fast path cannot
+     *                                  check
+     */
+    public static FastPath compile(OpenAPI openAPI, String operationId) {
+        for (Map.Entry<String, PathItem> path : openAPI.getPaths().entrySet()) {
+            Operation operation = path.getValue().getGet();
+            if (operation != null && operationId.equals(operation.getOperationId())) {
+                List<Parameter> parameters = new ArrayList<>();
+                if (path.getValue().getParameters() != null) {
+                    parameters.addAll(path.getValue().getParameters());
+                }
+                if (operation.getParameters() != null) {
+                    parameters.addAll(operation.getParameters());
+                }
+                return new FastPath(operationId, path.getKey(), parameters);
+            }
+        }
+        throw new IllegalArgumentException("no GET operation " + operationId + " in contract");
+    }
+
+    /**
+     * @return vertx route path for the operation
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Index of a parameter, for reading it from parsed {@link Values}.
+     *
+     * @param name parameter name in the contract
+     * @return parameter index
+     */
+    public int indexOf(String name) {
+        int index = indexOf(names, name);
+        if (index < 0) {
+            throw new IllegalArgumentException("no parameter " + name + " in " + operationId);
+        }
+        return index;
+    }
+
+    /**
+     * Reads and validates the operation's parameters from a request.
+     *
+     * @param request request routed to this operation
+     * @return parsed values
+     * @throws ValidationException with the contract validation's message when a
+     *                             parameter is missing or invalid
+     */
+    public Values parse(HttpServerRequest request) {
+        return parse(request.path(), request.query());
+    }
+
+    Values parse(String path, String query) {
+        Values values = new Values(names.length);
+        for (int i = 0; i < names.length; i++) {
+            if (inPath[i]) {
+                values.raw[i] = QueryStringDecoder.decodeComponent(segment(path, pathSegments[i]));
+            }
+        }
+        if (query != null) {
+            int start = 0;
+            while (start <= query.length()) {
+                int end = query.indexOf('&', start);
+                if (end < 0) {
+                    end = query.length();
+                }
+                int equals = query.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    equals = end;
+                }
+                for (int i = 0; i < names.length; i++) {
+                    if (!inPath[i] && names[i].length() == equals - start
+                            && query.regionMatches(start, names[i], 0, equals - start)) {
+                        if (values.raw[i] != null) {
+                            throw ValidationExceptionFactory.generateUnexpectedArrayValidationException();
+                        }
+                        values.raw[i] = equals < end ? decode(query.substring(equals + 1, end)) : "";
+                        break;
+                    }
+                }
+                start = end + 1;
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            String raw = values.raw[i];
+            if (raw == null) {
+                if (required[i]) {
+                    throw ValidationExceptionFactory.generateNotFoundValidationException(names[i],
+                            inPath[i] ? ParameterLocation.PATH : ParameterLocation.QUERY);
+                }
+            } else if (integer[i]) {
+                values.numbers[i] = number(i, raw);
+            } else if (patterns[i] != null && !patterns[i].matcher(raw).matches()) {
+                throw ValidationExceptionFactory
+                        .generateNotMatchValidationException("Value doesn't respect pattern " + patterns[i].pattern());
+            }
+        }
+        return values;
+    }
+
+    private long number(int i, String raw) {
+        long value;
+        try {
+            value = int64[i] ? Long.parseLong(raw) : Integer.parseInt(raw);
+        } catch (NumberFormatException e) {
+            throw ValidationExceptionFactory.generateNotMatchValidationException("Value is not a valid number");
+        }
+        if (minimums[i] != null) {
+            int compared = BigDecimal.valueOf(value).compareTo(minimums[i]);
+            if (exclusiveMinimums[i] ? compared <= 0 : compared < 0) {
+                throw ValidationExceptionFactory.generateNotMatchValidationException("Number should be "
+                        + (exclusiveMinimums[i] ? "> " : ">= ") + minimums[i].doubleValue());
+            }
+        }
+        if (maximums[i] != null) {
+            int compared = BigDecimal.valueOf(value).compareTo(maximums[i]);
+            if (exclusiveMaximums[i] ? compared >= 0 : compared > 0) {
+                throw ValidationExceptionFactory.generateNotMatchValidationException("Number should be "
+                        + (exclusiveMaximums[i] ? "< " : "<= ") + maximums[i].doubleValue());
+            }
+        }
+        return value;
+    }
+
+    private static String decode(String value) {
+        return value.indexOf('%') < 0 && value.indexOf('+') < 0 ? value
+                : QueryStringDecoder.decodeComponent(value);
+    }
+
+    private static String segment(String path, int index) {
+        int start = 0;
+        for (int s = 0; s < index; s++) {
+            start = path.indexOf('/', start) + 1;
+        }
+        int end = path.indexOf('/', start);
+        return path.substring(start, end < 0 ? path.length() : end);
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (value.equals(values[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private IllegalArgumentException unsupported(Parameter parameter, String feature) {
+        return new IllegalArgumentException(
+                "fast path of " + operationId + " cannot check " + feature + " of parameter " + parameter.getName());
+    }
+
+    /**
+     * Parameters of one request, indexed like the contract's parameter list.
+     */
+    public static final class Values {
+        private final String[] raw;
+        private final long[] numbers;
+
+        private Values(int count) {
+            raw = new String[count];
+            numbers = new long[count];
+        }
+
+        /**
+         * @param index parameter index from {@link FastPath#indexOf(String)}
+         * @return true when the request carried the parameter
+         */
+        public boolean has(int index) {
+            return raw[index] != null;
+        }
+
+        /**
+         * @param index parameter index from {@link FastPath#indexOf(String)}
+         * @return string value, null when absent
+         */
+        public String getString(int index) {
+            return raw[index];
+        }
+
+        /**
+         * @param index parameter index from {@link FastPath#indexOf(String)}
+         * @return integer value, 0 when absent
+         */
+        public long getLong(int index) {
+            return numbers[index];
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.josephcday.totp;
+
+import java.util.Arrays;
+
+/**
+ * HMAC-SHA1 specialized for TOTP. The key padded ipad and opad blocks only
+ * depend on the secret, so their SHA1 midstates are computed once in
+ * {@link #init(byte[], int)} and every counter afterwards costs two SHA1
+ * compressions instead of four.
+ *
+ * Not thread safe, see {@link TokenEngine}.
+ */
+public final class HmacSha1 {
+    public static final int HASH_LENGTH = 20; // SHA1 output length
+    public static final int MIDSTATE_LENGTH = 10; // inner and outer SHA1 states
+    private static final int BLOCK_LENGTH = 64; // SHA1 block length
+    private static final int[] IV = { 0x67452301, 0xEFCDAB89, 0x98BADCFE, 0x10325476, 0xC3D2E1F0 };
+    private static final int INNER_BITS = (BLOCK_LENGTH + 8) * 8; // ipad block + 8 byte counter
+    private static final int OUTER_BITS = (BLOCK_LENGTH + HASH_LENGTH) * 8; // opad block + inner hash
+
+    private final int[] inner = new int[5]; // midstate after the ipad block
+    private final int[] outer = new int[5]; // midstate after the opad block
+    private final int[] state = new int[5];
+    private final int[] w = new int[80];
+    private final byte[] block = new byte[BLOCK_LENGTH];
+
+    /**
+     * Keys the HMAC, computing the inner and outer pad midstates.
+     *
+     * @param key    key bytes
+     * @param length number of bytes of key to use
+     */
+    public void init(byte[] key, int length) {
+        byte[] keyBlock = block;
+        if (length > BLOCK_LENGTH) {
+            // RFC 2104: keys longer than a block are hashed first
+            byte[] hashed = new byte[HASH_LENGTH];
+            digest(key, length, hashed);
+            key = hashed;
+            length = HASH_LENGTH;
+        }
+        pad(key, length, keyBlock, 0x36);
+        load(keyBlock, 0);
+        compress(IV, inner);
+        pad(key, length, keyBlock, 0x5c);
+        load(keyBlock, 0);
+        compress(IV, outer);
+        Arrays.fill(keyBlock, (byte) 0);
+        Arrays.fill(w, 0);
+    }
+
+    /**
+     * Copies the keyed inner and outer midstates out, so they can be restored
+     * with {@link #setMidstate(int[])} without the original key.
+     *
+     * @param midstate output, at least {@value #MIDSTATE_LENGTH} ints
+     */
+    public void getMidstate(int[] midstate) {
+        System.arraycopy(inner, 0, midstate, 0, 5);
+        System.arraycopy(outer, 0, midstate, 5, 5);
+    }
+
+    /**
+     * Keys the HMAC from midstates previously copied with
+     * {@link #getMidstate(int[])}.
+     *
+     * @param midstate keyed inner and outer midstates
+     */
+    public void setMidstate(int[] midstate) {
+        System.arraycopy(midstate, 0, inner, 0, 5);
+        System.arraycopy(midstate, 5, outer, 0, 5);
+    }
+
+    /**
+     * Computes the HMAC of a big endian 8 byte counter.
+     *
+     * @param counter the message
+     * @param hash    output, at least {@value #HASH_LENGTH} bytes
+     */
+    public void doFinal(long counter, byte[] hash) {
+        w[0] = (int) (counter >>> 32);
+        w[1] = (int) counter;
+        w[2] = 0x80000000;
+        Arrays.fill(w, 3, 15, 0);
+        w[15] = INNER_BITS;
+        compress(inner, state);
+
+        System.arraycopy(state, 0, w, 0, 5);
+        w[5] = 0x80000000;
+        Arrays.fill(w, 6, 15, 0);
+        w[15] = OUTER_BITS;
+        compress(outer, state);
+
+        for (int i = 0; i < 5; i++) {
+            int v = state[i];
+            hash[i * 4] = (byte) (v >>> 24);
+            hash[i * 4 + 1] = (byte) (v >>> 16);
+            hash[i * 4 + 2] = (byte) (v >>> 8);
+            hash[i * 4 + 3] = (byte) v;
+        }
+    }
+
+    /**
+     * Plain SHA1 of a byte array. Only used for oversized keys.
+     */
+    private void digest(byte[] data, int length, byte[] out) {
+        int[] h = IV.clone();
+        byte[] tail = new byte[BLOCK_LENGTH * 2];
+        int full = length / BLOCK_LENGTH * BLOCK_LENGTH;
+        for (int i = 0; i < full; i += BLOCK_LENGTH) {
+            load(data, i);
+            compress(h, h);
+        }
+        int rest = length - full;
+        System.arraycopy(data, full, tail, 0, rest);
+        tail[rest] = (byte) 0x80;
+        int tailLength = rest + 9 > BLOCK_LENGTH ? BLOCK_LENGTH * 2 : BLOCK_LENGTH;
+        long bits = (long) length * 8;
+        for (int i = 0; i < 8; i++) {
+            tail[tailLength - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+        for (int i = 0; i < tailLength; i += BLOCK_LENGTH) {
+            load(tail, i);
+            compress(h, h);
+        }
+        for (int i = 0; i < 5; i++) {
+            out[i * 4] = (byte) (h[i] >>> 24);
+            out[i * 4 + 1] = (byte) (h[i] >>> 16);
+            out[i * 4 + 2] = (byte) (h[i] >>> 8);
+            out[i * 4 + 3] = (byte) h[i];
+        }
+        Arrays.fill(tail, (byte) 0);
+    }
+
+    private static void pad(byte[] key, int length, byte[] keyBlock, int pad) {
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            keyBlock[i] = (byte) ((i < length ? key[i] : 0) ^ pad);
+        }
+    }
+
+    private void load(byte[] data, int offset) {
+        for (int i = 0; i < 16; i++) {
+            int j = offset + i * 4;
+            w[i] = (data[j] & 0xFF) << 24 | (data[j + 1] & 0xFF) << 16 | (data[j + 2] & 0xFF) << 8
+                    | (data[j + 3] & 0xFF);
+        }
+    }
+
+    /**
+     * SHA1 compression of the block loaded in w[0..15], starting from 'from' and
+     * writing the result to 'to'. 'from' and 'to' may be the same array.
+     */
+    private void compress(int[] from, int[] to) {
+        int[] w = this.w;
+        for (int t = 16; t < 80; t++) {
+            w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+        }
+        int a = from[0];
+        int b = from[1];
+        int c = from[2];
+        int d = from[3];
+        int e = from[4];
+        int t = 0;
+        for (; t < 20; t++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + 0x5A827999 + w[t];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (; t < 40; t++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0x6ED9EBA1 + w[t];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (; t < 60; t++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + 0x8F1BBCDC + w[t];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (; t < 80; t++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0xCA62C1D6 + w[t];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        to[0] = from[0] + a;
+        to[1] = from[1] + b;
+        to[2] = from[2] + c;
+        to[3] = from[3] + d;
+        to[4] = from[4] + e;
+    }
+}
@@ -0,0 +1,184 @@
+package com.josephcday.totp;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache from base32 secret to keyed HMAC midstates, so hot secrets
+ * skip base32 decoding and HMAC key setup. The cache is split into
+ * independently locked stripes to keep event loops from contending. Evicted and
+ * expired entries have their key material zeroed.
+ */
+public final class KeyCache {
+    private static final int STRIPES = 16; // power of two
+    private static volatile KeyCache shared; // null when disabled
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity   maximum number of cached secrets
+     * @param ttlSeconds seconds an entry stays usable after it is stored, 0 or
+     *                   less for no expiry
+     */
+    public KeyCache(int capacity, int ttlSeconds) {
+        int stripeCapacity = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Sets up the process wide cache used by {@link TokenEngine}.
+     *
+     * @param capacity   maximum number of cached secrets, 0 or less disables the
+     *                   cache
+     * @param ttlSeconds seconds an entry stays usable, 0 or less for no expiry
+     */
+    public static void configure(int capacity, int ttlSeconds) {
+        KeyCache old = shared;
+        shared = capacity > 0 ? new KeyCache(capacity, ttlSeconds) : null;
+        if (old != null) {
+            old.clear();
+        }
+    }
+
+    /**
+     * @return the process wide cache, or null when disabled
+     */
+    public static KeyCache shared() {
+        return shared;
+    }
+
+    /**
+     * Keys an HMAC with the cached midstates for a secret.
+     *
+     * @param b32Secret the TOTP stored shared secret
+     * @param hmac      HMAC to key
+     * @return true when the secret was cached and the HMAC is keyed
+     */
+    public boolean load(String b32Secret, HmacSha1 hmac) {
+        Stripe stripe = stripe(b32Secret);
+        Prepared entry;
+        synchronized (stripe) {
+            entry = stripe.get(b32Secret);
+            if (entry != null && System.nanoTime() - entry.stored > ttlNanos) {
+                stripe.remove(b32Secret);
+                entry.destroy();
+                evictions.increment();
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hmac.setMidstate(entry.midstate);
+            // an entry evicted while copying may have been partially zeroed
+            if (!entry.destroyed) {
+                hits.increment();
+                return true;
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Caches the midstates of an HMAC keyed with a secret.
+     *
+     * @param b32Secret the TOTP stored shared secret
+     * @param hmac      HMAC keyed with b32Secret
+     */
+    public void store(String b32Secret, HmacSha1 hmac) {
+        Prepared entry = new Prepared();
+        hmac.getMidstate(entry.midstate);
+        Stripe stripe = stripe(b32Secret);
+        Prepared old;
+        synchronized (stripe) {
+            old = stripe.put(b32Secret, entry);
+        }
+        if (old != null) {
+            old.destroy();
+        }
+    }
+
+    /**
+     * Drops and zeroes every cached entry.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Prepared entry : stripe.values()) {
+                    entry.destroy();
+                }
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * @return number of cached secrets
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private Stripe stripe(String b32Secret) {
+        int h = b32Secret.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static final class Prepared {
+        private final int[] midstate = new int[HmacSha1.MIDSTATE_LENGTH];
+        private final long stored = System.nanoTime();
+        private volatile boolean destroyed;
+
+        private void destroy() {
+            destroyed = true;
+            Arrays.fill(midstate, 0);
+        }
+    }
+
+    private final class Stripe extends LinkedHashMap<String, Prepared> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true); // access order for LRU
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Prepared> eldest) {
+            if (size() > capacity) {
+                eldest.getValue().destroy();
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
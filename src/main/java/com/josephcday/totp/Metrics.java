@@ -0,0 +1,295 @@
+package com.josephcday.totp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Process wide service metrics, rendered in the Prometheus text format by GET
+ * /metrics. Each operationId gets a latency histogram, response status
+ * counters, an HMAC counter and a worker queue delay histogram. Event loop
+ * delay and QR render time are tracked process wide.
+ *
+ * Recording itself is allocation free: operation entries are created once, and
+ * every update is an atomic add on a {@link LongAdder} or
+ * {@link LatencyHistogram}. Timing a request through the router still costs
+ * its body end handler and the operationId entry in the routing context, as
+ * vertx-web offers no per-request hook without them.
+ */
+public final class Metrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final String OPERATION = "metricsOperation"; // routing context key of the operationId
+    private static final String UNMATCHED = "none"; // requests that reached no operation
+    private static final int[] STATUSES = { 200, 304, 400, 401, 404, 429, 503 };
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static volatile Metrics shared; // null when disabled
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final LatencyHistogram eventLoopDelay = new LatencyHistogram();
+    private final LatencyHistogram qrRender = new LatencyHistogram();
+
+    Metrics() {
+    }
+
+    /**
+     * Turns metrics on or off.
+     *
+     * @param enabled false disables recording and the endpoint
+     */
+    public static void configure(boolean enabled) {
+        shared = enabled ? new Metrics() : null;
+    }
+
+    /**
+     * @return the process wide metrics, or null when disabled
+     */
+    public static Metrics shared() {
+        return shared;
+    }
+
+    /**
+     * Metrics of one operation, created on first use.
+     *
+     * @param operationId operation in totp.yaml, or another request kind
+     * @return the operation's metrics
+     */
+    public Operation operation(String operationId) {
+        Operation operation = operations.get(operationId);
+        return operation != null ? operation : operations.computeIfAbsent(operationId, Operation::new);
+    }
+
+    /**
+     * Router handler that times every request, registered before any other.
+     * Requests are attributed to the operation named by {@link #operation(String,
+     * Handler)}, or to 'none' when they were answered before reaching one.
+     *
+     * @return global handler
+     */
+    public Handler<RoutingContext> requestHandler() {
+        return routingContext -> {
+            long start = System.nanoTime();
+            routingContext.addBodyEndHandler(v -> {
+                String operationId = routingContext.get(OPERATION);
+                operation(operationId != null ? operationId : UNMATCHED).end(
+                        routingContext.response().getStatusCode(), System.nanoTime() - start);
+            });
+            routingContext.next();
+        };
+    }
+
+    /**
+     * Attributes requests to an operation. Returns the handler itself when
+     * metrics are disabled.
+     *
+     * @param operationId operation in totp.yaml
+     * @param handler     operation handler
+     * @return handler to register with the router
+     */
+    public static Handler<RoutingContext> operation(String operationId, Handler<RoutingContext> handler) {
+        if (shared == null) {
+            return handler;
+        }
+        return routingContext -> {
+            routingContext.put(OPERATION, operationId);
+            handler.handle(routingContext);
+        };
+    }
+
+    /**
+     * Counts the HMACs a handler computes on the thread that runs it. Registered
+     * inside the execution model, so it sees the thread doing the work. Returns
+     * the handler itself when metrics are disabled.
+     *
+     * @param operationId operation in totp.yaml
+     * @param handler     operation handler
+     * @return counting handler
+     */
+    public static Handler<RoutingContext> counted(String operationId, Handler<RoutingContext> handler) {
+        Metrics metrics = shared;
+        if (metrics == null) {
+            return handler;
+        }
+        Operation operation = metrics.operation(operationId);
+        return routingContext -> {
+            TokenEngine engine = TokenEngine.get();
+            long before = engine.getGenerated();
+            try {
+                handler.handle(routingContext);
+            } finally {
+                operation.hmacs(engine.getGenerated() - before);
+            }
+        };
+    }
+
+    /**
+     * @param nanos how late a periodic event loop timer fired
+     */
+    public void eventLoopDelay(long nanos) {
+        eventLoopDelay.record(nanos);
+    }
+
+    /**
+     * @param nanos time to render a QR code that was not cached
+     */
+    public void qrRender(long nanos) {
+        qrRender.record(nanos);
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     *
+     * @return metrics text
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        header(out, "totp_request_duration_seconds", "summary", "Request latency by operation");
+        for (Operation operation : operations.values()) {
+            summary(out, "totp_request_duration_seconds", operation.label, operation.latency);
+        }
+        header(out, "totp_requests_total", "counter", "Responses by operation and status");
+        for (Operation operation : operations.values()) {
+            for (int i = 0; i <= STATUSES.length; i++) {
+                long count = operation.statuses[i].sum();
+                if (count > 0) {
+                    out.append("totp_requests_total{").append(operation.label).append(",status=\"")
+                            .append(i < STATUSES.length ? Integer.toString(STATUSES[i]) : "other").append("\"} ")
+                            .append(count).append('\n');
+                }
+            }
+        }
+        header(out, "totp_hmac_total", "counter", "HMAC computations by operation");
+        for (Operation operation : operations.values()) {
+            out.append("totp_hmac_total{").append(operation.label).append("} ").append(operation.hmacs.sum())
+                    .append('\n');
+        }
+        header(out, "totp_worker_queue_delay_seconds", "summary", "Time offloaded requests waited for a thread");
+        for (Operation operation : operations.values()) {
+            if (operation.queueDelay.getCount() > 0) {
+                summary(out, "totp_worker_queue_delay_seconds", operation.label, operation.queueDelay);
+            }
+        }
+        header(out, "totp_event_loop_delay_seconds", "summary", "Lateness of a periodic event loop timer");
+        summary(out, "totp_event_loop_delay_seconds", null, eventLoopDelay);
+        header(out, "totp_qr_render_seconds", "summary", "Time to render an uncached QR code");
+        summary(out, "totp_qr_render_seconds", null, qrRender);
+
+        KeyCache keyCache = KeyCache.shared();
+        if (keyCache != null) {
+            counter(out, "totp_key_cache_hits_total", "Prepared key cache hits", keyCache.getHits());
+            counter(out, "totp_key_cache_misses_total", "Prepared key cache misses", keyCache.getMisses());
+        }
+        TokenCache tokenCache = TokenCache.shared();
+        if (tokenCache != null) {
+            counter(out, "totp_token_cache_hits_total", "Token cache hits", tokenCache.getHits());
+            counter(out, "totp_token_cache_misses_total", "Token cache misses", tokenCache.getMisses());
+        }
+        ReplayGuard replayGuard = ReplayGuard.shared();
+        if (replayGuard != null) {
+            counter(out, "totp_replays_total", "Checks rejected as replays", replayGuard.getReplays());
+            counter(out, "totp_replay_unrecorded_total", "Checks rejected as the replay guard could not record them",
+                    replayGuard.getUntracked() + replayGuard.getOverflows());
+        }
+        AdmissionHandler admission = AdmissionHandler.shared();
+        if (admission != null) {
+            long rejected = (admission.getClients() != null ? admission.getClients().getRejected() : 0)
+                    + (admission.getSecrets() != null ? admission.getSecrets().getRejected() : 0);
+            counter(out, "totp_admission_rejected_total", "Requests rejected by admission control", rejected);
+        }
+        FailureGuard failureGuard = FailureGuard.shared();
+        if (failureGuard != null) {
+            counter(out, "totp_user_check_rejected_total", "User checks rejected after too many failures",
+                    failureGuard.getRejected());
+        }
+        SecretStore store = SecretStore.shared();
+        if (store != null) {
+            header(out, "totp_store_users", "gauge", "Users with a secret in the embedded store");
+            out.append("totp_store_users ").append(store.getSize()).append('\n');
+            header(out, "totp_store_bytes", "gauge", "Bytes used by the secret store log");
+            out.append("totp_store_bytes ").append(store.getLength()).append('\n');
+        }
+        EventLog eventLog = EventLog.shared();
+        if (eventLog != null) {
+            header(out, "totp_log_events_skipped_total", "counter", "Request events not logged by reason");
+            out.append("totp_log_events_skipped_total{reason=\"sampled\"} ").append(eventLog.getSampled()).append('\n');
+            out.append("totp_log_events_skipped_total{reason=\"rate\"} ").append(eventLog.getLimited()).append('\n');
+            out.append("totp_log_events_skipped_total{reason=\"full\"} ").append(eventLog.getDropped()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String label, LatencyHistogram histogram) {
+        String prefix = label != null ? label + "," : "";
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+        }
+        String labels = label != null ? "{" + label + "}" : "";
+        out.append(name).append("_sum").append(labels).append(' ').append(seconds(histogram.getSum())).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Counters of one operation.
+     */
+    public static final class Operation {
+        private final String label; // prometheus label pair
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram queueDelay = new LatencyHistogram();
+        private final LongAdder[] statuses = new LongAdder[STATUSES.length + 1]; // last counts other statuses
+        private final LongAdder hmacs = new LongAdder();
+
+        private Operation(String operationId) {
+            label = "operation=\"" + operationId + "\"";
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records a finished request.
+         *
+         * @param status response status code
+         * @param nanos  time from the request arriving to the response ending
+         */
+        public void end(int status, long nanos) {
+            latency.record(nanos);
+            int i = 0;
+            while (i < STATUSES.length && STATUSES[i] != status) {
+                i++;
+            }
+            statuses[i].increment();
+        }
+
+        /**
+         * @param nanos time a request waited for a worker or virtual thread
+         */
+        public void queueDelay(long nanos) {
+            queueDelay.record(nanos);
+        }
+
+        /**
+         * @param count HMACs computed for one request
+         */
+        public void hmacs(long count) {
+            hmacs.add(count);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.josephcday.totp;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Execution model for each operationId. An operation runs on the event loop,
+ * on its own named worker pool, or on virtual threads when the JDK has them.
+ * Offloaded operations admit a bounded number of requests, running plus
+ * queued, and answer 503 straight away once that bound is reached, so a burst
+ * of slow requests cannot stall the event loops or pile up without limit.
+ * Virtual threads run at most 'threads' handlers of an operation at once, each
+ * with per thread state borrowed from a {@link ThreadStatePool}, since a
+ * virtual thread lives for one request only.
+ *
+ * Policies are parsed from a spec such as
+ * {@code imageGET=worker:4:64,checkGET=eventloop}, where each entry is
+ * {@code operationId=model[:threads[:queue]]}. Operations without an entry run
+ * on the event loop.
+ */
+public final class OperationExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(OperationExecutor.class);
+    private static volatile Map<String, Policy> policies = Collections.emptyMap();
+    private static volatile ExecutorService virtualThreads; // created on first use
+
+    private OperationExecutor() {
+    }
+
+    /**
+     * Where an operation's handler runs.
+     */
+    public enum Model {
+        EVENTLOOP, WORKER, VIRTUAL
+    }
+
+    /**
+     * Sets the execution model of each operation.
+     *
+     * @param spec    comma separated {@code operationId=model[:threads[:queue]]}
+     *                entries, empty runs everything on the event loop
+     * @param threads default pool size of worker operations
+     * @param queue   default requests waiting per offloaded operation
+     */
+    public static void configure(String spec, int threads, int queue) {
+        policies = parse(spec, threads, queue);
+    }
+
+    static Map<String, Policy> parse(String spec, int threads, int queue) {
+        Map<String, Policy> parsed = new HashMap<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return parsed;
+        }
+        for (String entry : spec.split(",")) {
+            String[] operation = entry.trim().split("=", 2);
+            if (operation.length != 2) {
+                throw new IllegalArgumentException("execution entry is not operationId=model: " + entry);
+            }
+            String[] fields = operation[1].trim().split(":");
+            Model model = Model.valueOf(fields[0].toUpperCase(Locale.ROOT));
+            int poolSize = fields.length > 1 && !fields[1].isEmpty() ? Integer.parseInt(fields[1]) : threads;
+            int waiting = fields.length > 2 && !fields[2].isEmpty() ? Integer.parseInt(fields[2]) : queue;
+            if (poolSize < 1 || waiting < 0) {
+                throw new IllegalArgumentException("execution pool size or queue out of range: " + entry);
+            }
+            parsed.put(operation[0].trim(), new Policy(model, poolSize, waiting));
+        }
+        return parsed;
+    }
+
+    /**
+     * Gets the configured model of an operation.
+     *
+     * @param operationId operation in totp.yaml
+     * @return execution model, event loop when not configured
+     */
+    public static Model model(String operationId) {
+        Policy policy = policies.get(operationId);
+        return policy != null ? policy.model : Model.EVENTLOOP;
+    }
+
+    /**
+     * Wraps an operation handler in its configured execution model. Worker pools
+     * are shared by name, so every verticle instance feeds the same pool and
+     * bound.
+     *
+     * @param vertx       vertx instance owning the worker pools
+     * @param operationId operation in totp.yaml
+     * @param handler     operation handler, must end the response before
+     *                    returning
+     * @return handler to register with the router factory
+     */
+    public static Handler<RoutingContext> wrap(Vertx vertx, String operationId, Handler<RoutingContext> handler) {
+        Policy policy = policies.get(operationId);
+        if (policy == null || policy.model == Model.EVENTLOOP) {
+            return handler;
+        }
+        if (policy.model == Model.VIRTUAL) {
+            ExecutorService executor = virtualThreads();
+            if (executor != null) {
+                return routingContext -> {
+                    if (!policy.admit()) {
+                        reject(routingContext, operationId);
+                        return;
+                    }
+                    Context context = vertx.getOrCreateContext();
+                    long submitted = System.nanoTime();
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                // waits for a slot, so only 'threads' handlers run at once
+                                policy.state.run(() -> {
+                                    queued(operationId, submitted);
+                                    handler.handle(routingContext);
+                                });
+                            } catch (Throwable t) {
+                                context.runOnContext(v -> routingContext.fail(t));
+                            } finally {
+                                policy.release();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        policy.release();
+                        reject(routingContext, operationId);
+                    }
+                };
+            }
+            logger.warn("virtual threads unavailable, " + operationId + " runs on a worker pool");
+        }
+
+        WorkerExecutor executor = vertx.createSharedWorkerExecutor("totp-" + operationId, policy.threads);
+        return routingContext -> {
+            if (!policy.admit()) {
+                reject(routingContext, operationId);
+                return;
+            }
+            long submitted = System.nanoTime();
+            executor.<Void>executeBlocking(promise -> {
+                queued(operationId, submitted);
+                handler.handle(routingContext);
+                promise.complete();
+            }, false, ar -> {
+                policy.release();
+                if (ar.failed()) {
+                    routingContext.fail(ar.cause());
+                }
+            });
+        };
+    }
+
+    private static void queued(String operationId, long submitted) {
+        Metrics metrics = Metrics.shared();
+        if (metrics != null) {
+            metrics.operation(operationId).queueDelay(System.nanoTime() - submitted);
+        }
+    }
+
+    private static void reject(RoutingContext routingContext, String operationId) {
+        EventLog.log(EventLog.Event.OVERLOADED, routingContext.request());
+        routingContext.response().putHeader(HttpHeaders.RETRY_AFTER, "1");
+        Responses.end(routingContext.response(), 503, Responses.JSON, Responses.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Virtual thread per task executor, looked up reflectively so the service
+     * still builds and runs on Java 8.
+     *
+     * @return executor, null when the JDK has no virtual threads
+     */
+    private static ExecutorService virtualThreads() {
+        ExecutorService executor = virtualThreads;
+        if (executor == null) {
+            synchronized (OperationExecutor.class) {
+                executor = virtualThreads;
+                if (executor == null) {
+                    try {
+                        executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                                .invoke(null);
+                        virtualThreads = executor;
+                    } catch (ReflectiveOperationException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Execution model of one operation, with its admission bound.
+     */
+    static final class Policy {
+        final Model model;
+        final int threads;
+        final int limit; // running plus queued
+        final ThreadStatePool state; // per thread state of virtual threads, null for other models
+        private final AtomicInteger admitted = new AtomicInteger();
+
+        Policy(Model model, int threads, int queue) {
+            this.model = model;
+            this.threads = threads;
+            this.limit = threads + queue;
+            this.state = model == Model.VIRTUAL ? new ThreadStatePool(threads) : null;
+        }
+
+        boolean admit() {
+            if (admitted.incrementAndGet() > limit) {
+                admitted.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            admitted.decrementAndGet();
+        }
+
+        int getAdmitted() {
+            return admitted.get();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.josephcday.totp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.google.zxing.common.BitMatrix;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Writes a zxing BitMatrix straight to a 1-bit grayscale PNG, without AWT or
+ * ImageIO. Set bits are black, matching MatrixToImageWriter. Each thread reuses
+ * one Deflater and its scanline and output arrays.
+ *
+ * Encoders are not thread safe, always obtain one with {@link #get()}.
+ */
+public final class PngEncoder {
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+    static final ThreadLocal<PngEncoder> ENCODERS = new ThreadLocal<>(); // also lent out by ThreadStatePool
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[13];
+    private byte[] row = new byte[0];
+    private byte[] deflated = new byte[4096];
+
+    private PngEncoder() {
+    }
+
+    /**
+     * Gets the encoder bound to the calling thread, creating it on first use.
+     *
+     * @return this thread's encoder
+     */
+    public static PngEncoder get() {
+        PngEncoder encoder = ENCODERS.get();
+        if (encoder == null) {
+            encoder = new PngEncoder();
+            ENCODERS.set(encoder);
+        }
+        return encoder;
+    }
+
+    /**
+     * Encodes a bit matrix as a PNG.
+     *
+     * @param matrix QR code modules, one bit per pixel
+     * @return buffer containing the PNG
+     */
+    public Buffer encode(BitMatrix matrix) {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        int rowLength = (width + 7) / 8 + 1; // filter type byte, then packed pixels
+        if (row.length < rowLength) {
+            row = new byte[rowLength];
+        }
+
+        // scanlines are deflated straight into the reused output array
+        deflater.reset();
+        int deflatedLength = 0;
+        for (int y = 0; y < height; y++) {
+            row[0] = 0; // filter type none
+            for (int i = 1; i < rowLength; i++) {
+                row[i] = (byte) 0xFF; // white
+            }
+            for (int x = 0; x < width; x++) {
+                if (matrix.get(x, y)) {
+                    row[1 + (x >> 3)] &= ~(0x80 >>> (x & 7));
+                }
+            }
+            deflater.setInput(row, 0, rowLength);
+            deflatedLength = drain(deflatedLength);
+        }
+        deflater.finish();
+        deflatedLength = drain(deflatedLength);
+
+        Buffer png = Buffer.buffer(SIGNATURE.length + 3 * 12 + header.length + deflatedLength);
+        png.appendBytes(SIGNATURE);
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 1; // bit depth
+        header[9] = 0; // grayscale
+        header[10] = 0; // deflate
+        header[11] = 0; // adaptive filtering
+        header[12] = 0; // no interlace
+        appendChunk(png, IHDR, header, header.length);
+        appendChunk(png, IDAT, deflated, deflatedLength);
+        appendChunk(png, IEND, header, 0);
+        return png;
+    }
+
+    /**
+     * Collects deflater output into the reused output array, growing it when full.
+     *
+     * @param length bytes already collected
+     * @return bytes collected
+     */
+    private int drain(int length) {
+        while (!deflater.finished()) {
+            if (length == deflated.length) {
+                byte[] grown = new byte[deflated.length * 2];
+                System.arraycopy(deflated, 0, grown, 0, length);
+                deflated = grown;
+            }
+            int written = deflater.deflate(deflated, length, deflated.length - length);
+            length += written;
+            if (written == 0 && deflater.needsInput()) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    private void appendChunk(Buffer png, byte[] type, byte[] data, int length) {
+        crc.reset();
+        crc.update(type, 0, type.length);
+        crc.update(data, 0, length);
+        png.appendInt(length).appendBytes(type).appendBytes(data, 0, length).appendInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
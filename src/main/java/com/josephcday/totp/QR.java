@@ -1,25 +1,59 @@
 package com.josephcday.totp;
 
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 
 import io.vertx.core.buffer.Buffer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * QR generator utility
  */
 public class QR {
+    public static final int DEFAULT_SIZE = 128; // edge dimension in pixels
     private static final QRCodeWriter WRITER = new QRCodeWriter();
+    private static final int QUIET_ZONE = 4; // modules of margin required around a QR code
+    private static final Map<EncodeHintType, Object> MODULE_HINTS = Collections
+            .singletonMap(EncodeHintType.MARGIN, 0); // one pixel per module, no margin
+    private static volatile Map<String, Buffer> cache; // null when disabled
+
+    /**
+     * Sets up the bounded cache of rendered images.
+     *
+     * @param capacity maximum number of cached images, 0 or less disables the
+     *                 cache
+     */
+    public static void configure(int capacity) {
+        if (capacity <= 0) {
+            cache = null;
+            return;
+        }
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, Buffer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Buffer> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
 
     /**
      * Generate a QR Code image
-     * 
+     *
      * @param text text to embed into a QR Code image
      * @return buffer containing a PNG for writing to a vertx HTTP routing context
      *         response.
@@ -27,12 +61,13 @@ public class QR {
      * @throws IOException     exception
      */
     public static Buffer generateQRCodeImage(String text) throws WriterException, IOException {
-        return generateQRCodeImage(text, 128);
+        return generateQRCodeImage(text, DEFAULT_SIZE);
     }
 
     /**
-     * Generate a QR Code image
-     * 
+     * Generate a QR Code image. Served from the image cache when one is
+     * configured.
+     *
      * @param text text to embed into a QR Code image
      * @param size edge dimension in pixels for the generated QR code.
      * @return buffer containing a PNG of a QRCode for writing to a vertx HTTP
@@ -41,11 +76,226 @@ public class QR {
      * @throws IOException     exception
      */
     public static Buffer generateQRCodeImage(String text, int size) throws WriterException, IOException {
+        return generateQRCode(text, size, Format.PNG);
+    }
+
+    /**
+     * Generate a QR Code in the requested output format. Served from the image
+     * cache when one is configured.
+     *
+     * @param text   text to embed into a QR Code image
+     * @param size   edge dimension in pixels for the generated QR code. Ignored by
+     *               {@link Format#JSON}.
+     * @param format output format
+     * @return buffer containing the QR Code for writing to a vertx HTTP routing
+     *         context response.
+     * @throws WriterException exception
+     */
+    public static Buffer generateQRCode(String text, int size, Format format) throws WriterException {
+        Map<String, Buffer> images = cache;
+        String key = null;
+        if (images != null) {
+            key = format.tag + ":" + size + ":" + text;
+            Buffer cached = images.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        BitMatrix bitMatrix = WRITER.encode(text, BarcodeFormat.QR_CODE, size, size);
-        MatrixToImageWriter.writeToStream(bitMatrix, "PNG", stream);
-        Buffer buffer = Buffer.buffer(stream.toByteArray());
+        long start = System.nanoTime();
+        Buffer buffer = render(text, size, format);
+        Metrics metrics = Metrics.shared();
+        if (metrics != null) {
+            metrics.qrRender(System.nanoTime() - start);
+        }
+        if (images != null) {
+            images.put(key, buffer);
+        }
         return buffer;
     }
+
+    /**
+     * Renders one code in every format, bypassing the cache and metrics, so the
+     * encoder classes are loaded and initialized before the first image request
+     * rather than during it.
+     */
+    public static void warmUp() {
+        for (Format format : Format.values()) {
+            try {
+                render("otpauth://totp/warm-up?secret=JBSWY3DPEHPK3PXP", DEFAULT_SIZE, format);
+            } catch (WriterException e) {
+                throw new IllegalStateException(e); // fixed input always fits a QR code
+            }
+        }
+    }
+
+    private static Buffer render(String text, int size, Format format) throws WriterException {
+        switch (format) {
+        case SVG:
+            return svg(WRITER.encode(text, BarcodeFormat.QR_CODE, 0, 0, MODULE_HINTS), size);
+        case JSON:
+            return modules(WRITER.encode(text, BarcodeFormat.QR_CODE, 0, 0, MODULE_HINTS));
+        default:
+            return PngEncoder.get().encode(WRITER.encode(text, BarcodeFormat.QR_CODE, size, size));
+        }
+    }
+
+    /**
+     * Entity tag for a PNG QR Code image.
+     *
+     * @param text text to embed into a QR Code image
+     * @param size edge dimension in pixels for the generated QR code.
+     * @return quoted strong entity tag
+     */
+    public static String etag(String text, int size) {
+        return etag(text, size, Format.PNG);
+    }
+
+    /**
+     * Entity tag for a QR Code. Rendering is deterministic, so the tag is derived
+     * from the inputs and a conditional request can be answered without
+     * rendering.
+     *
+     * @param text   text to embed into a QR Code image
+     * @param size   edge dimension in pixels for the generated QR code.
+     * @param format output format
+     * @return quoted strong entity tag
+     */
+    public static String etag(String text, int size, Format format) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((format.tag + ":" + size + ":" + text).getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest();
+            return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE provides SHA-256
+        }
+    }
+
+    /**
+     * Whether an If-None-Match header names an entity tag. Tags are compared
+     * whole, weakly as RFC 7232 asks for If-None-Match, and '*' matches any tag.
+     *
+     * @param ifNoneMatch If-None-Match header value, may be null
+     * @param etag        quoted entity tag of the current representation
+     * @return true when a 304 may be sent
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * SVG of a module matrix. Each run of dark modules in a row becomes one path
+     * segment, and the quiet zone is added through the view box.
+     */
+    private static Buffer svg(BitMatrix modules, int size) {
+        int width = modules.getWidth();
+        int height = modules.getHeight();
+        int view = width + QUIET_ZONE * 2;
+        Buffer svg = Buffer.buffer(256 + width * height / 2);
+        svg.appendString("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").appendString(Integer.toString(size))
+                .appendString("\" height=\"").appendString(Integer.toString(size))
+                .appendString("\" viewBox=\"-" + QUIET_ZONE + " -" + QUIET_ZONE + " " + view + " " + view)
+                .appendString("\" shape-rendering=\"crispEdges\"><rect x=\"-" + QUIET_ZONE + "\" y=\"-"
+                        + QUIET_ZONE + "\" width=\"" + view + "\" height=\"" + view)
+                .appendString("\" fill=\"#fff\"/><path d=\"");
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                if (!modules.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int run = x;
+                while (run < width && modules.get(run, y)) {
+                    run++;
+                }
+                svg.appendString("M" + x + " " + y + "h" + (run - x) + "v1h-" + (run - x) + "z");
+                x = run;
+            }
+        }
+        svg.appendString("\"/></svg>");
+        return svg;
+    }
+
+    /**
+     * Compact JSON of a module matrix, one string of '0' and '1' per row. The
+     * quiet zone is not included.
+     */
+    private static Buffer modules(BitMatrix modules) {
+        int width = modules.getWidth();
+        int height = modules.getHeight();
+        Buffer json = Buffer.buffer(64 + (width + 3) * height);
+        json.appendString("{\"modules\":").appendString(Integer.toString(width))
+                .appendString(",\"quietZone\":" + QUIET_ZONE + ",\"rows\":[");
+        for (int y = 0; y < height; y++) {
+            if (y > 0) {
+                json.appendByte((byte) ',');
+            }
+            json.appendByte((byte) '"');
+            for (int x = 0; x < width; x++) {
+                json.appendByte((byte) (modules.get(x, y) ? '1' : '0'));
+            }
+            json.appendByte((byte) '"');
+        }
+        json.appendString("]}");
+        return json;
+    }
+
+    /**
+     * QR Code output formats, with their content types.
+     */
+    public enum Format {
+        PNG("image/png", "png1"), SVG("image/svg+xml", "svg1"), JSON("application/json", "json1");
+
+        private final String contentType;
+        private final String tag; // entity tag and cache prefix, change when the output changes
+
+        Format(String contentType, String tag) {
+            this.contentType = contentType;
+            this.tag = tag;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Picks the output format for a request. An explicit format parameter wins,
+         * otherwise the first supported media type in the Accept header, ordered by
+         * preference. Falls back to PNG.
+         *
+         * @param format   optional format parameter, 'png', 'svg' or 'json'
+         * @param accepted media types from the Accept header, most preferred first
+         * @return output format
+         */
+        public static Format negotiate(String format, List<String> accepted) {
+            if (format != null) {
+                return valueOf(format.toUpperCase(Locale.ROOT));
+            }
+            for (String type : accepted) {
+                for (Format candidate : values()) {
+                    if (candidate.contentType.equalsIgnoreCase(type)) {
+                        return candidate;
+                    }
+                }
+                if ("image/*".equals(type) || "*/*".equals(type)) {
+                    return PNG;
+                }
+            }
+            return PNG;
+        }
+    }
 }
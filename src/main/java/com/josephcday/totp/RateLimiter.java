@@ -0,0 +1,156 @@
+package com.josephcday.totp;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free token buckets for a bounded number of keys.
+ *
+ * Each bucket is a single long in a preallocated table: a 16 bit key
+ * fingerprint and the bucket's theoretical arrival time (GCRA), in microseconds.
+ * A request moves that time forward by one emission interval with a
+ * compare-and-set and is rejected when it would run more than 'burst' intervals
+ * ahead of now, so an admission costs a hash, a few reads and one CAS.
+ *
+ * A key probes a short run of slots. A bucket whose arrival time has passed is
+ * full again and holds no state worth keeping, so it is reclaimed by the next
+ * key that needs the slot. When every probed slot belongs to an active key the
+ * request is admitted without a bucket and counted as an overflow, which keeps
+ * memory at {@code slots * 8} bytes no matter how many keys are seen.
+ */
+public final class RateLimiter {
+    private static final int MAX_PROBE = 4;
+    private static final long TIME_MASK = (1L << 48) - 1; // about 8.9 years of microseconds
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final long interval; // microseconds between requests at the steady rate
+    private final long tolerance; // how far ahead of now the arrival time may run
+    private final long origin = System.nanoTime();
+    private final long seed = new SecureRandom().nextLong();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param slots buckets kept, rounded up to a power of two
+     * @param rate  requests per second a key is allowed on average
+     * @param burst requests a key may make at once
+     */
+    public RateLimiter(int slots, int rate, int burst) {
+        int capacity = Integer.highestOneBit(Math.max(MAX_PROBE, slots) - 1) << 1;
+        this.table = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.interval = Math.max(1, TimeUnit.SECONDS.toMicros(1) / Math.max(1, rate));
+        this.tolerance = interval * Math.max(1, burst);
+    }
+
+    /**
+     * Takes one request from the bucket of a key.
+     *
+     * @param key client address, secret or other key
+     * @return 0 when admitted, otherwise microseconds until the key is admitted
+     *         again
+     */
+    public long tryAcquire(String key) {
+        return tryAcquire(hash(key), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - origin));
+    }
+
+    long tryAcquire(long hash, long now) {
+        long fingerprint = (hash >>> 48 | 1) << 48; // never 0, which marks an empty slot
+        int index = (int) hash & mask;
+        for (;;) {
+            int free = -1;
+            for (int probe = 0; probe < MAX_PROBE; probe++) {
+                int slot = (index + probe) & mask;
+                long current = table.get(slot);
+                if ((current & ~TIME_MASK) == fingerprint) {
+                    long wait = take(slot, current, fingerprint, now);
+                    if (wait >= 0) {
+                        return count(wait);
+                    }
+                    free = -2; // slot changed hands, look again
+                    break;
+                }
+                if (free == -1 && (current == 0 || (current & TIME_MASK) <= now)) {
+                    free = slot; // empty, or an idle bucket that has refilled
+                }
+            }
+            if (free == -2) {
+                continue;
+            }
+            if (free == -1) {
+                overflows.increment();
+                return count(0);
+            }
+            long current = table.get(free);
+            if ((current == 0 || (current & TIME_MASK) <= now)
+                    && table.compareAndSet(free, current, fingerprint | (now + interval))) {
+                return count(0);
+            }
+        }
+    }
+
+    /**
+     * Charges one interval to an existing bucket.
+     *
+     * @return 0 when admitted, microseconds to wait when rejected, -1 when the
+     *         slot no longer belongs to the key
+     */
+    private long take(int slot, long current, long fingerprint, long now) {
+        for (;;) {
+            long arrival = Math.max(current & TIME_MASK, now) + interval;
+            if (arrival - now > tolerance) {
+                return arrival - now - tolerance;
+            }
+            if (table.compareAndSet(slot, current, fingerprint | arrival)) {
+                return 0;
+            }
+            current = table.get(slot);
+            if ((current & ~TIME_MASK) != fingerprint) {
+                return -1;
+            }
+        }
+    }
+
+    private long count(long wait) {
+        if (wait == 0) {
+            admitted.increment();
+        } else {
+            rejected.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Keyed 64 bit hash, the per process seed keeps slots from being targeted.
+     */
+    long hash(String key) {
+        long h = seed;
+        for (int i = 0; i < key.length(); i++) {
+            h = mix(h ^ key.charAt(i));
+        }
+        return mix(h ^ key.length());
+    }
+
+    private static long mix(long h) {
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        h *= 0x94D049BB133111EBL;
+        return h ^ (h >>> 29);
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getOverflows() {
+        return overflows.sum();
+    }
+}
@@ -0,0 +1,170 @@
+package com.josephcday.totp;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers accepted (secret, interval) pairs so a token can only be used once.
+ *
+ * Entries live in a timing wheel with one slot per 30 second interval. Each slot
+ * is a fixed size open addressing set of 64 bit keyed hashes, inserted with a
+ * compare-and-set, so the hot path takes no locks and allocates nothing. All
+ * slots are preallocated, which gives a hard memory cap of
+ * {@code slots * capacity * 8} bytes. When the wheel turns to a new interval the
+ * slot that fell outside the window is cleared and reused.
+ *
+ * A token that cannot be recorded is rejected, since it could otherwise be
+ * replayed without limit: one that matched an interval further than 'window'
+ * from the current interval, such as at a caller supplied time, is counted as
+ * untracked, and one that finds its slot full is counted as an overflow. The
+ * window should cover the largest window a check accepts.
+ */
+public final class ReplayGuard {
+    private static final int MAX_PROBE = 32;
+    private static volatile ReplayGuard shared; // null when disabled
+
+    private final int window;
+    private final int slots;
+    private final int capacity; // per slot, power of two
+    private final AtomicLongArray table;
+    private final long[] slotSteps; // interval each slot holds, guarded by this
+    private final long seed = new SecureRandom().nextLong();
+    private volatile long advanced = Long.MIN_VALUE; // interval the wheel is turned to
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder untracked = new LongAdder();
+
+    /**
+     * @param capacity accepted tokens tracked per interval, rounded up to a power
+     *                 of two
+     * @param window   intervals before and after the current interval to track
+     */
+    public ReplayGuard(int capacity, int window) {
+        this.window = Math.max(0, window);
+        // one spare slot so an insert racing a turn of the wheel never lands in the
+        // slot being cleared
+        this.slots = this.window * 2 + 2;
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.table = new AtomicLongArray(slots * this.capacity);
+        this.slotSteps = new long[slots];
+    }
+
+    /**
+     * Sets up the process wide guard used by the check operation.
+     *
+     * @param capacity accepted tokens tracked per interval, 0 or less disables
+     *                 replay protection
+     * @param window   intervals before and after the current interval to track
+     */
+    public static void configure(int capacity, int window) {
+        shared = capacity > 0 ? new ReplayGuard(capacity, window) : null;
+    }
+
+    /**
+     * @return the process wide guard, or null when disabled
+     */
+    public static ReplayGuard shared() {
+        return shared;
+    }
+
+    /**
+     * Records a token accepted for a secret at an interval.
+     *
+     * @param b32Secret the TOTP stored shared secret
+     * @param step      the time-step counter the token matched
+     * @return false when the same secret was already accepted for that interval,
+     *         or the token cannot be recorded
+     */
+    public boolean accept(String b32Secret, long step) {
+        long now = TOTP.step(System.currentTimeMillis());
+        if (now > advanced) {
+            advance(now);
+        }
+        if (step < now - window || step > now + window) {
+            untracked.increment(); // outside the wheel
+            return false;
+        }
+
+        long key = key(b32Secret, step);
+        int base = (int) Math.floorMod(step, (long) slots) * capacity;
+        int mask = capacity - 1;
+        int index = (int) key & mask;
+        for (int probe = 0; probe < MAX_PROBE;) {
+            long current = table.get(base + index);
+            if (current == key) {
+                replays.increment();
+                return false;
+            }
+            if (current == 0) {
+                if (table.compareAndSet(base + index, 0, key)) {
+                    accepted.increment();
+                    return true;
+                }
+                continue; // lost the race for this bucket, look at it again
+            }
+            index = (index + 1) & mask;
+            probe++;
+        }
+        overflows.increment();
+        return false;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getReplays() {
+        return replays.sum();
+    }
+
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    /**
+     * Turns the wheel so every interval within the window of 'now' has a clean
+     * slot.
+     */
+    private synchronized void advance(long now) {
+        if (now <= advanced) {
+            return;
+        }
+        for (long step = now - window; step <= now + window; step++) {
+            int slot = (int) Math.floorMod(step, (long) slots);
+            if (slotSteps[slot] != step) {
+                int base = slot * capacity;
+                for (int i = 0; i < capacity; i++) {
+                    table.lazySet(base + i, 0);
+                }
+                slotSteps[slot] = step;
+            }
+        }
+        advanced = now;
+    }
+
+    /**
+     * Keyed 64 bit hash of a secret and interval. The per process seed keeps keys
+     * from being predictable. Never 0, which marks an empty bucket.
+     */
+    private long key(String b32Secret, long step) {
+        long h = seed ^ step * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < b32Secret.length(); i++) {
+            h = mix(h ^ b32Secret.charAt(i));
+        }
+        h = mix(h ^ b32Secret.length());
+        return h != 0 ? h : 1;
+    }
+
+    private static long mix(long h) {
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        h *= 0x94D049BB133111EBL;
+        return h ^ (h >>> 29);
+    }
+}
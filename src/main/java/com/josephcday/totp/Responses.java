@@ -0,0 +1,139 @@
+package com.josephcday.totp;
+
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Response bodies and writing. Fixed bodies are encoded once into shared
+ * buffers, token bodies are filled into a per-thread byte template, and
+ * compression is only left on for compressible content types at or above a
+ * size threshold. Everything else is sent with {@code content-encoding:
+ * identity}, which stops the server's compressor from gzipping tiny JSON and
+ * already compressed PNGs.
+ */
+public final class Responses {
+    public static final String JSON = "application/json";
+    public static final Buffer BAD_REQUEST = error(400, "Bad Request");
+    public static final Buffer NOT_FOUND = error(404, "Not Found");
+    public static final Buffer TOO_MANY_REQUESTS = error(429, "Too Many Requests");
+    public static final Buffer SERVICE_UNAVAILABLE = error(503, "Service Unavailable");
+    private static final Buffer EMPTY = Buffer.buffer(0);
+    private static final int MAX_CACHED_OFFSET = 120; // largest window in totp.yaml
+    private static final Buffer[] OFFSETS = new Buffer[MAX_CACHED_OFFSET * 2 + 1];
+    private static final byte[] TOKEN = "{\"token\":\"000000\"}".getBytes(StandardCharsets.US_ASCII);
+    private static final int TOKEN_DIGITS = 10; // index of the first digit in TOKEN
+    static final ThreadLocal<byte[]> TOKEN_TEMPLATES = new ThreadLocal<>(); // also lent out by ThreadStatePool
+    private static volatile int compressionThreshold = 1024; // bytes
+
+    static {
+        for (int i = 0; i < OFFSETS.length; i++) {
+            OFFSETS[i] = offsetBody(i - MAX_CACHED_OFFSET);
+        }
+    }
+
+    private Responses() {
+    }
+
+    /**
+     * Sets the smallest body that is compressed.
+     *
+     * @param threshold size in bytes, bodies below it are sent uncompressed
+     */
+    public static void configure(int threshold) {
+        compressionThreshold = Math.max(0, threshold);
+    }
+
+    /**
+     * Ends a response with a body, leaving compression on only when it pays.
+     *
+     * @param response    response to end
+     * @param status      HTTP status code
+     * @param contentType content type of the body
+     * @param body        body, may be a shared buffer
+     */
+    public static void end(HttpServerResponse response, int status, String contentType, Buffer body) {
+        response.setStatusCode(status).putHeader(HttpHeaders.CONTENT_TYPE, contentType);
+        if (body.length() < compressionThreshold || !compressible(contentType)) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY);
+        }
+        response.end(body);
+    }
+
+    /**
+     * Ends a response without a body, which is never worth compressing.
+     *
+     * @param response response to end
+     * @param status   HTTP status code
+     */
+    public static void end(HttpServerResponse response, int status) {
+        response.setStatusCode(status).putHeader(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY).end(EMPTY);
+    }
+
+    /**
+     * Ends a response with a JSON error body.
+     *
+     * @param response response to end
+     * @param status   HTTP status code
+     * @param message  error message, null for the generic 400 or 404 message
+     */
+    public static void error(HttpServerResponse response, int status, String message) {
+        Buffer body;
+        if (message == null && status == 400) {
+            body = BAD_REQUEST;
+        } else if (message == null && status == 404) {
+            body = NOT_FOUND;
+        } else {
+            body = error(status, message);
+        }
+        end(response, status, JSON, body);
+    }
+
+    /**
+     * @param offset matched interval offset
+     * @return body of a passing check
+     */
+    public static Buffer offset(int offset) {
+        if (offset >= -MAX_CACHED_OFFSET && offset <= MAX_CACHED_OFFSET) {
+            return OFFSETS[offset + MAX_CACHED_OFFSET];
+        }
+        return offsetBody(offset);
+    }
+
+    /**
+     * @param token six digit one-time password
+     * @return body of a token response
+     */
+    public static Buffer token(int token) {
+        byte[] template = TOKEN_TEMPLATES.get();
+        if (template == null) {
+            template = TOKEN.clone();
+            TOKEN_TEMPLATES.set(template);
+        }
+        for (int i = TOKEN_DIGITS + 5; i >= TOKEN_DIGITS; i--) {
+            template[i] = (byte) ('0' + token % 10);
+            token /= 10;
+        }
+        return Buffer.buffer(template); // copies, so the template is free again
+    }
+
+    /**
+     * @param contentType response content type
+     * @return true for text based types that compress well
+     */
+    static boolean compressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith(JSON)
+                || contentType.startsWith("application/x-ndjson") || contentType.startsWith("image/svg+xml");
+    }
+
+    private static Buffer error(int status, String message) {
+        return Buffer.buffer(new JsonObject().put("code", status).put("message", message).encode());
+    }
+
+    private static Buffer offsetBody(int offset) {
+        return Buffer.buffer("{\"offset\":" + offset + "}");
+    }
+}
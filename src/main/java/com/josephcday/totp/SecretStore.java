@@ -0,0 +1,533 @@
+package com.josephcday.totp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Embedded store of TOTP secrets by user id, so callers can check a token
+ * without shipping the secret. Secrets are kept AES-GCM encrypted, bound to
+ * their user id, in an append-only log file that is memory mapped. An open
+ * addressing index of primitive longs maps each user id to its latest record,
+ * and lookups decrypt straight out of the mapping without reading the file.
+ *
+ * Record layout, all integers big endian:
+ *
+ * <pre>
+ * length:i32 crc32:i32 type:u8 id:i64 [secretLength:u8 nonce:12 ciphertext tag:16]
+ * </pre>
+ *
+ * where length covers the whole record and the CRC everything after it. On
+ * open the log is replayed up to the first torn or corrupt record, which is
+ * where the next write goes. Once superseded and deleted records outweigh the
+ * live ones, a background thread rewrites the live records to a new file and
+ * atomically renames it over the log.
+ *
+ * Lookups are lock-free under an optimistic read; writers and compaction are
+ * serialized.
+ */
+public final class SecretStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SecretStore.class);
+    private static final long MAGIC = 0x544F545053544F31L; // "TOTPSTO1"
+    private static final int FILE_HEADER = 8;
+    private static final int RECORD_HEADER = 4 + 4 + 1 + 8;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int MAX_SECRET = 64;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int INITIAL_MAPPING = 1 << 20;
+    private static final long COMPACT_MIN_DEAD = 1 << 20; // dead bytes before compaction is worth it
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // per thread cipher and buffers, the key is passed to each lookup; also lent out by ThreadStatePool
+    static final ThreadLocal<Decryptor> DECRYPTORS = ThreadLocal.withInitial(Decryptor::new);
+    private static volatile SecretStore shared; // null when disabled
+
+    private final Path path;
+    private final SecretKeySpec key;
+    private final StampedLock lock = new StampedLock(); // guards swaps of the index and mapping
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "totp-store-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long[] ids = new long[1024]; // 0 marks an empty slot
+    private int[] offsets = new int[1024];
+    private int size;
+    private int end; // where the next record is written
+    private long liveBytes;
+    private long deadBytes;
+
+    /**
+     * Opens or creates a store, replaying its log.
+     *
+     * @param path log file
+     * @param key  AES key of 16, 24 or 32 bytes
+     * @throws IOException when the file cannot be mapped or is not a store
+     */
+    public SecretStore(Path path, byte[] key) throws IOException {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("secret store key must be 16, 24 or 32 bytes");
+        }
+        this.path = path;
+        this.key = new SecretKeySpec(key, "AES");
+        Files.deleteIfExists(compactPath()); // left over from an interrupted compaction
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long length = channel.size();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(path + " is larger than a mapping");
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_MAPPING, length));
+        if (length == 0) {
+            mapped.putLong(0, MAGIC);
+            mapped.force();
+        } else if (length < FILE_HEADER || mapped.getLong(0) != MAGIC) {
+            throw new IOException(path + " is not a secret store");
+        }
+        recover();
+    }
+
+    /**
+     * Sets up the process wide store.
+     *
+     * @param path    log file, empty disables the store
+     * @param keyFile file holding the base64 AES key
+     * @throws IOException when the key or log cannot be read
+     */
+    public static void configure(String path, String keyFile) throws IOException {
+        SecretStore old = shared;
+        if (path == null || path.isEmpty()) {
+            shared = null;
+        } else {
+            if (keyFile == null || keyFile.isEmpty()) {
+                throw new IllegalArgumentException("secret store needs a key file");
+            }
+            byte[] key = Base64.getDecoder()
+                    .decode(new String(Files.readAllBytes(Paths.get(keyFile)), StandardCharsets.US_ASCII).trim());
+            shared = new SecretStore(Paths.get(path), key);
+            logger.info("secret store " + path + " holds " + shared.getSize() + " secrets");
+        }
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * @return the process wide store, or null when disabled
+     */
+    public static SecretStore shared() {
+        return shared;
+    }
+
+    /**
+     * Looks up a user's secret.
+     *
+     * @param id user id, greater than 0
+     * @return the base32 secret, null when the user has none
+     * @throws GeneralSecurityException when the record does not decrypt with
+     *                                  this store's key
+     */
+    public String get(long id) throws GeneralSecurityException {
+        long stamp = lock.tryOptimisticRead();
+        ByteBuffer buffer = mapped;
+        int offset = find(ids, offsets, id);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                buffer = mapped;
+                offset = find(ids, offsets, id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return offset < 0 ? null : DECRYPTORS.get().decrypt(buffer, offset, id, key);
+    }
+
+    /**
+     * Stores or replaces a user's secret, durably.
+     *
+     * @param id     user id, greater than 0
+     * @param secret base32 secret
+     * @throws IOException when the log cannot be written
+     */
+    public synchronized void put(long id, String secret) throws IOException {
+        checkId(id);
+        byte[] plain = secret.getBytes(StandardCharsets.US_ASCII);
+        if (plain.length == 0 || plain.length > MAX_SECRET) {
+            throw new IllegalArgumentException("secret length out of range");
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        byte[] sealed;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(ByteBuffer.allocate(8).putLong(0, id).array());
+            sealed = cipher.doFinal(plain);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + 1 + NONCE_LENGTH + sealed.length);
+        record.putInt(record.capacity()).putInt(0).put(PUT).putLong(id).put((byte) plain.length).put(nonce)
+                .put(sealed);
+        int offset = append(record);
+        int previous = index(id, offset);
+        if (previous >= 0) {
+            deadBytes += mapped.getInt(previous);
+            liveBytes -= mapped.getInt(previous);
+        }
+        liveBytes += record.capacity();
+        compactIfWasteful();
+    }
+
+    /**
+     * Deletes a user's secret, durably.
+     *
+     * @param id user id, greater than 0
+     * @return false when the user had no secret
+     * @throws IOException when the log cannot be written
+     */
+    public synchronized boolean delete(long id) throws IOException {
+        checkId(id);
+        if (find(ids, offsets, id) < 0) {
+            return false;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER);
+        record.putInt(RECORD_HEADER).putInt(0).put(DELETE).putLong(id);
+        append(record);
+        int previous = index(id, -1);
+        deadBytes += mapped.getInt(previous) + RECORD_HEADER;
+        liveBytes -= mapped.getInt(previous);
+        compactIfWasteful();
+        return true;
+    }
+
+    /**
+     * Rewrites the live records to a new log and swaps it in. Lookups continue
+     * on the old mapping meanwhile.
+     *
+     * @throws IOException when the new log cannot be written
+     */
+    synchronized void compact() throws IOException {
+        Path compactPath = compactPath();
+        long needed = FILE_HEADER + liveBytes;
+        int[] moved = offsets.clone();
+        FileChannel compacted = FileChannel.open(compactPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer target;
+        int position = FILE_HEADER;
+        try {
+            target = compacted.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.min(Integer.MAX_VALUE, Math.max(INITIAL_MAPPING, needed * 2)));
+            target.putLong(0, MAGIC);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    int length = mapped.getInt(offsets[i]);
+                    ByteBuffer source = mapped.duplicate();
+                    source.limit(offsets[i] + length).position(offsets[i]);
+                    target.position(position);
+                    target.put(source);
+                    moved[i] = position;
+                    position += length;
+                }
+            }
+            target.force();
+        } catch (IOException | RuntimeException e) {
+            compacted.close();
+            Files.deleteIfExists(compactPath);
+            throw e;
+        }
+        Files.move(compactPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        FileChannel old = channel;
+        long stamp = lock.writeLock();
+        try {
+            channel = compacted;
+            mapped = target;
+            offsets = moved;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        old.close(); // the old mapping stays readable until it is collected
+        logger.info("secret store compacted from " + end + " to " + position + " bytes");
+        end = position;
+        deadBytes = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compactor.shutdown();
+        mapped.force();
+        channel.close();
+    }
+
+    /**
+     * @return number of users with a secret
+     */
+    public int getSize() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return bytes used in the log, including superseded records
+     */
+    public synchronized int getLength() {
+        return end;
+    }
+
+    private Path compactPath() {
+        return path.resolveSibling(path.getFileName() + ".compact");
+    }
+
+    private static void checkId(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("user id must be greater than 0");
+        }
+    }
+
+    /**
+     * Replays the log into the index, stopping at the first torn or corrupt
+     * record.
+     */
+    private void recover() {
+        int position = FILE_HEADER;
+        int limit = mapped.capacity();
+        while (position <= limit - RECORD_HEADER) {
+            int length = mapped.getInt(position);
+            if (length < RECORD_HEADER || length > limit - position || mapped.getInt(position + 4) != crc(mapped,
+                    position, length)) {
+                break;
+            }
+            byte type = mapped.get(position + 8);
+            long id = mapped.getLong(position + 9);
+            int previous = type == PUT ? index(id, position) : type == DELETE ? index(id, -1) : -1;
+            if (previous >= 0) {
+                deadBytes += mapped.getInt(previous);
+                liveBytes -= mapped.getInt(previous);
+            }
+            if (type == PUT) {
+                liveBytes += length;
+            } else {
+                deadBytes += length;
+            }
+            position += length;
+        }
+        end = position;
+    }
+
+    /**
+     * Writes a record at the end of the log and forces it to disk.
+     *
+     * @return offset of the record
+     */
+    private int append(ByteBuffer record) throws IOException {
+        record.putInt(4, crc(record, 0, record.capacity()));
+        long needed = (long) end + record.capacity();
+        if (needed > mapped.capacity()) {
+            if (needed > Integer.MAX_VALUE) {
+                throw new IOException("secret store is full");
+            }
+            MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * mapped.capacity())));
+            long stamp = lock.writeLock();
+            try {
+                mapped = grown;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        int offset = end;
+        ByteBuffer target = mapped.duplicate();
+        target.position(offset);
+        record.rewind();
+        target.put(record);
+        mapped.force();
+        end += record.capacity();
+        return offset;
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer covered = buffer.duplicate();
+        covered.limit(offset + length).position(offset + 8);
+        CRC32 crc = new CRC32();
+        crc.update(covered);
+        return (int) crc.getValue();
+    }
+
+    private static int find(long[] ids, int[] offsets, long id) {
+        if (ids.length != offsets.length) {
+            return -1; // torn optimistic read, validation fails
+        }
+        int mask = ids.length - 1;
+        int slot = slot(id, mask);
+        for (int probes = 0; probes < ids.length; probes++) {
+            long current = ids[slot];
+            if (current == id) {
+                return offsets[slot];
+            }
+            if (current == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Points a user id at a record, or removes it when offset is -1.
+     *
+     * @return offset of the record it replaced, -1 when there was none
+     */
+    private int index(long id, int offset) {
+        long stamp = lock.writeLock();
+        try {
+            if (offset >= 0 && (size + 1) * 2 > ids.length) {
+                resize(ids.length * 2);
+            }
+            int mask = ids.length - 1;
+            int slot = slot(id, mask);
+            while (ids[slot] != 0 && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (ids[slot] == 0) {
+                if (offset >= 0) {
+                    ids[slot] = id;
+                    offsets[slot] = offset;
+                    size++;
+                }
+                return -1;
+            }
+            int previous = offsets[slot];
+            if (offset >= 0) {
+                offsets[slot] = offset;
+                return previous;
+            }
+
+            // backward shift deletion keeps probe chains unbroken without tombstones
+            size--;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; ids[next] != 0; next = (next + 1) & mask) {
+                int home = slot(ids[next], mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    ids[hole] = ids[next];
+                    offsets[hole] = offsets[next];
+                    hole = next;
+                }
+            }
+            ids[hole] = 0;
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldIds = ids;
+        int[] oldOffsets = offsets;
+        long[] newIds = new long[capacity];
+        int[] newOffsets = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != 0) {
+                int slot = slot(oldIds[i], mask);
+                while (newIds[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newIds[slot] = oldIds[i];
+                newOffsets[slot] = oldOffsets[i];
+            }
+        }
+        ids = newIds;
+        offsets = newOffsets;
+    }
+
+    private static int slot(long id, int mask) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private void compactIfWasteful() {
+        if (deadBytes > COMPACT_MIN_DEAD && deadBytes > liveBytes && compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    logger.error("secret store compaction failed", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Per thread decryption state, so lookups reuse their cipher and buffers.
+     */
+    static final class Decryptor {
+        private final Cipher cipher;
+        private final byte[] nonce = new byte[NONCE_LENGTH];
+        private final ByteBuffer aad = ByteBuffer.allocate(8);
+        private final ByteBuffer plain = ByteBuffer.allocate(MAX_SECRET + TAG_LENGTH);
+
+        Decryptor() {
+            try {
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String decrypt(ByteBuffer mapped, int offset, long id, SecretKeySpec key) throws GeneralSecurityException {
+            int position = offset + RECORD_HEADER;
+            int length = mapped.get(position) & 0xFF;
+            for (int i = 0; i < NONCE_LENGTH; i++) {
+                nonce[i] = mapped.get(position + 1 + i);
+            }
+            ByteBuffer sealed = mapped.duplicate();
+            sealed.limit(position + 1 + NONCE_LENGTH + length + TAG_LENGTH).position(position + 1 + NONCE_LENGTH);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            aad.clear();
+            aad.putLong(0, id);
+            cipher.updateAAD(aad);
+            plain.clear();
+            cipher.doFinal(sealed, plain);
+            String secret = new String(plain.array(), 0, length, StandardCharsets.US_ASCII);
+            Arrays.fill(plain.array(), (byte) 0);
+            return secret;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.josephcday.totp;
+
+import java.util.Set;
+
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
+
+/**
+ * Body handler for the router factory that leaves the request body unread on
+ * streaming operations, so their handlers can consume it as it arrives. Every
+ * other request is buffered by the default vertx body handler.
+ */
+public class StreamingBodyHandler implements BodyHandler {
+    private final BodyHandler delegate = BodyHandler.create();
+    private final Set<String> streamingPaths;
+
+    /**
+     * @param streamingPaths request paths whose body is not buffered
+     */
+    public StreamingBodyHandler(Set<String> streamingPaths) {
+        this.streamingPaths = streamingPaths;
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        if (streamingPaths.contains(routingContext.request().path())) {
+            routingContext.next();
+        } else {
+            delegate.handle(routingContext);
+        }
+    }
+
+    @Override
+    public BodyHandler setHandleFileUploads(boolean handleFileUploads) {
+        delegate.setHandleFileUploads(handleFileUploads);
+        return this;
+    }
+
+    @Override
+    public BodyHandler setBodyLimit(long bodyLimit) {
+        delegate.setBodyLimit(bodyLimit);
+        return this;
+    }
+
+    @Override
+    public BodyHandler setUploadsDirectory(String uploadsDirectory) {
+        delegate.setUploadsDirectory(uploadsDirectory);
+        return this;
+    }
+
+    @Override
+    public BodyHandler setMergeFormAttributes(boolean mergeFormAttributes) {
+        delegate.setMergeFormAttributes(mergeFormAttributes);
+        return this;
+    }
+
+    @Override
+    public BodyHandler setDeleteUploadedFilesOnEnd(boolean deleteUploadedFilesOnEnd) {
+        delegate.setDeleteUploadedFilesOnEnd(deleteUploadedFilesOnEnd);
+        return this;
+    }
+
+    @Override
+    public BodyHandler setPreallocateBodyBuffer(boolean isPreallocateBodyBuffer) {
+        delegate.setPreallocateBodyBuffer(isPreallocateBodyBuffer);
+        return this;
+    }
+}
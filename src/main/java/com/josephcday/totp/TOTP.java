@@ -1,19 +1,8 @@
 package com.josephcday.totp;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.Random;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -27,7 +16,6 @@ public class TOTP {
     private static final long ONE_SEC = 1000L;
     private static final int TOTP_DIGITS = 6; // Google Authenticator and Authy uses 6
     private static final int TOTP_SECRET_LENGTH = 16; // Google Authenticator and Authy uses 16
-    private static final Base32 BASE32_CODEC = new Base32();
     public static final String BASE32_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
     public static final char[] BASE32_CHAR_ARRAY;
 
@@ -39,16 +27,32 @@ public class TOTP {
      * Generates a random 16 character base32 string. Used as a stored shared
      * secret.
      * 
-     * @see java.security.SecureRandom
+     * @see EntropyPool
      * @return base32 string
      */
     public static String b32Secret() {
-        Random random = new SecureRandom();
-        StringBuilder sb = new StringBuilder(TOTP_SECRET_LENGTH);
-        for (int i = 0; i < TOTP_SECRET_LENGTH; i++) {
-            sb.append(BASE32_CHAR_ARRAY[random.nextInt(32)]);
+        return b32Secret(TOTP_SECRET_LENGTH);
+    }
+
+    /**
+     * Generates a random base32 string of the provided length. Used as a stored
+     * shared secret. 32 characters gives the 160 bit key RFC 6238 recommends, 26
+     * characters a 128 bit key.
+     * 
+     * @see EntropyPool
+     * @param length number of base32 characters
+     * @return base32 string
+     */
+    public static String b32Secret(int length) {
+        char[] chars = new char[length];
+        EntropyPool.get().base32(chars, 0, length);
+        // bits past the last whole key byte must be zero to decode
+        int trailingBits = length * 5 % 8;
+        if (trailingBits > 0) {
+            int last = BASE32_CHARS.indexOf(chars[length - 1]);
+            chars[length - 1] = BASE32_CHAR_ARRAY[last & ~((1 << trailingBits) - 1)];
         }
-        return sb.toString();
+        return new String(chars);
     }
 
     /**
@@ -118,24 +122,105 @@ public class TOTP {
      */
     public static boolean validate(String b32Secret, int token, long timeMillis, int window)
             throws InvalidKeyException, NoSuchAlgorithmException {
-        ArrayList<Long> intervals = new ArrayList<>();
+        return check(b32Secret, token, timeMillis, window).isValid();
+    }
 
-        intervals.add(timeMillis);
-        for (int i = 0; i < window; i++) {
-            intervals.add(timeMillis + i * TOTP_INTERVAL * ONE_SEC);
-            intervals.add(timeMillis - i * TOTP_INTERVAL * ONE_SEC);
-        }
+    /**
+     * Checks a token against a secret using this instances currentTimeMillis().
+     * Will check 'window' intervals before and after current interval for
+     * validity.
+     * 
+     * @param b32Secret the TOTP stored shared secret
+     * @param token     the one-time password token
+     * @param window    how many additional 30 second intervals to include before
+     *                  and after
+     * @return result holding the matched interval offset
+     * @throws InvalidKeyException      exception
+     * @throws NoSuchAlgorithmException exception
+     */
+    public static ValidationResult check(String b32Secret, int token, int window)
+            throws InvalidKeyException, NoSuchAlgorithmException {
+        return check(b32Secret, token, System.currentTimeMillis(), window);
+    }
+
+    /**
+     * Checks a token against a secret using provided timestamp. Will check
+     * 'window' intervals before and after current interval for validity.
+     * 
+     * @param b32Secret the TOTP stored shared secret
+     * @param token     the one-time password token
+     * @param timeUnix  the time in seconds to check
+     * @param window    how many additional 30 second intervals to include before
+     *                  and after
+     * @return result holding the matched interval offset
+     * @throws InvalidKeyException      exception
+     * @throws NoSuchAlgorithmException exception
+     */
+    public static ValidationResult check(String b32Secret, int token, int timeUnix, int window)
+            throws InvalidKeyException, NoSuchAlgorithmException {
+        return check(b32Secret, token, timeUnix * ONE_SEC, window);
+    }
 
-        Iterator<Long> iter = intervals.iterator();
+    /**
+     * Checks a token against a secret using provided timestamp. Walks outward
+     * from the current interval (0, -1, +1, -2, +2, ...) up to 'window' intervals
+     * each way and stops at the first match.
+     * 
+     * @param b32Secret  the TOTP stored shared secret
+     * @param token      the one-time password token
+     * @param timeMillis the time in milliseconds to check
+     * @param window     how many additional 30 second intervals to include before
+     *                   and after
+     * @return result holding the matched interval offset
+     * @throws InvalidKeyException      exception
+     * @throws NoSuchAlgorithmException exception
+     */
+    public static ValidationResult check(String b32Secret, int token, long timeMillis, int window)
+            throws InvalidKeyException, NoSuchAlgorithmException {
+        long step = step(timeMillis);
+        if (generateStepToken(b32Secret, step) == token) {
+            return ValidationResult.passed(0);
+        }
+        if (window <= 0) {
+            return ValidationResult.FAILED;
+        }
 
-        while (iter.hasNext()) {
-            Long val = iter.next();
-            int getToken = generateToken(b32Secret, val);
-            if (getToken == token) {
-                return true;
+        TokenEngine engine = TokenEngine.get().init(b32Secret);
+        for (int i = 1; i <= window; i++) {
+            if (engine.generate(step - i) == token) {
+                return ValidationResult.passed(-i);
+            }
+            if (engine.generate(step + i) == token) {
+                return ValidationResult.passed(i);
             }
         }
-        return false;
+        return ValidationResult.FAILED;
+    }
+
+    /**
+     * Checks a token like {@link #check(String, int, long, int)}, and when the
+     * shared {@link ReplayGuard} is configured rejects a token that was already
+     * accepted for the same secret and interval, or that the guard cannot
+     * record.
+     * 
+     * @param b32Secret  the TOTP stored shared secret
+     * @param token      the one-time password token
+     * @param timeMillis the time in milliseconds to check
+     * @param window     how many additional 30 second intervals to include before
+     *                   and after
+     * @return result holding the matched interval offset, or
+     *         {@link ValidationResult#REPLAYED}
+     * @throws InvalidKeyException      exception
+     * @throws NoSuchAlgorithmException exception
+     */
+    public static ValidationResult checkOnce(String b32Secret, int token, long timeMillis, int window)
+            throws InvalidKeyException, NoSuchAlgorithmException {
+        ValidationResult result = check(b32Secret, token, timeMillis, window);
+        ReplayGuard guard = ReplayGuard.shared();
+        if (result.isValid() && guard != null && !guard.accept(b32Secret, step(timeMillis) + result.getOffset())) {
+            return ValidationResult.REPLAYED;
+        }
+        return result;
     }
 
     /**
@@ -182,43 +267,84 @@ public class TOTP {
     }
 
     /**
-     * Generates an integer token for the provided interval. Uses provided
-     * milliseconds, and will round to nearest interval.
+     * Gets a token as an integer, for callers that write the digits themselves.
+     * Uses provided milliseconds, and will round to nearest interval.
      * 
      * @param b32Secret  the TOTP stored shared secret
      * @param timeMillis the time in milliseconds to generate
-     * @return the one-time password integer
-     * @throws NoSuchAlgorithmException exception
-     * @throws InvalidKeyException      exception
+     * @return the one-time password, without leading zeros
+     * @throws InvalidKeyException exception
      */
-    private static int generateToken(String b32Secret, long timeMillis)
-            throws NoSuchAlgorithmException, InvalidKeyException {
-
-        byte[] key = BASE32_CODEC.decode(b32Secret);
-
-        ByteBuffer bb = ByteBuffer.allocate(8); // size of a long
-        bb.order(ByteOrder.BIG_ENDIAN);
-        bb.putLong(timeMillis / ONE_SEC / TOTP_INTERVAL);
-        byte[] data = bb.array();
+    public static int getTokenValue(String b32Secret, long timeMillis) throws InvalidKeyException {
+        return generateToken(b32Secret, timeMillis);
+    }
 
-        SecretKeySpec sKey = new SecretKeySpec(key, "HmacSHA1");
-        Mac mac = Mac.getInstance("HmacSHA1");
-        mac.init(sKey);
-        byte[] hash = mac.doFinal(data);
+    /**
+     * Seconds left before the interval containing the provided time ends.
+     * 
+     * @param timeMillis the time in milliseconds
+     * @return whole seconds until the next interval
+     */
+    public static int secondsLeft(long timeMillis) {
+        return (int) (((step(timeMillis) + 1) * TOTP_INTERVAL * ONE_SEC - timeMillis) / ONE_SEC);
+    }
 
-        // get offset from hash
-        int offset = hash[hash.length - 1] & 0xF;
+    /**
+     * Time-step counter of the interval containing the provided time.
+     * 
+     * @param timeMillis the time in milliseconds
+     * @return unix seconds divided by the interval
+     */
+    static long step(long timeMillis) {
+        return timeMillis / ONE_SEC / TOTP_INTERVAL;
+    }
 
-        // get hash bytes as int from offset
-        byte[] truncated = Arrays.copyOfRange(hash, offset, offset + 4);
-        int retData = ByteBuffer.wrap(truncated).getInt();
+    /**
+     * Start of the interval for a time-step counter.
+     * 
+     * @param step the time-step counter
+     * @return the interval start in unixtime
+     */
+    static long unixtime(long step) {
+        return step * TOTP_INTERVAL;
+    }
 
-        // drop top bit
-        retData &= 0x7FFFFFFF;
+    /**
+     * Generates an integer token for the provided interval. Uses provided
+     * milliseconds, and will round to nearest interval.
+     * 
+     * @param b32Secret  the TOTP stored shared secret
+     * @param timeMillis the time in milliseconds to generate
+     * @return the one-time password integer
+     * @throws InvalidKeyException exception
+     */
+    private static int generateToken(String b32Secret, long timeMillis) throws InvalidKeyException {
+        return generateStepToken(b32Secret, step(timeMillis));
+    }
 
-        // keep only last 6 digits
-        retData %= 1000000;
-        return retData;
+    /**
+     * Generates an integer token for the provided time-step counter. Tokens for
+     * the current interval go through the shared {@link TokenCache} when one is
+     * configured.
+     * 
+     * @param b32Secret the TOTP stored shared secret
+     * @param step      the time-step counter
+     * @return the one-time password integer
+     * @throws InvalidKeyException exception
+     */
+    private static int generateStepToken(String b32Secret, long step) throws InvalidKeyException {
+        TokenCache cache = TokenCache.shared();
+        if (cache != null) {
+            Integer cached = cache.get(b32Secret, step);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int token = TokenEngine.get().init(b32Secret).generate(step);
+        if (cache != null) {
+            cache.put(b32Secret, step, token);
+        }
+        return token;
     }
 
     /**
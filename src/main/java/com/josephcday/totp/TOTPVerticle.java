@@ -1,23 +1,39 @@
 package com.josephcday.totp;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import com.google.zxing.WriterException;
 
+import io.swagger.v3.oas.models.OpenAPI;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.ext.web.MIMEHeader;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.api.RequestParameter;
 import io.vertx.ext.web.api.RequestParameters;
 import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
+import io.vertx.ext.web.api.validation.ValidationException;
 
 /**
  * TOTP Server Verticle
@@ -25,145 +41,275 @@ import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
  * @author Joseph Curtis Day
  */
 public class TOTPVerticle extends AbstractVerticle {
+    private static final String FAST_VALUES = "fastValues"; // routing context key of fast path parameters
     private HttpServer server;
+    private NetServer binaryServer; // null unless the binary port is set
+    private static final long DELAY_PROBE_MILLIS = 100; // event loop delay sampling interval
+    private static final int USER_CHECK_WINDOW = 1; // largest window checked against a stored secret
+    private long delayProbe = -1; // event loop delay timer, -1 when metrics are off
     private static final Logger logger = LoggerFactory.getLogger(TOTPVerticle.class);
 
     @Override
     public void start(Promise<Void> promise) {
-        OpenAPI3RouterFactory.create(this.vertx, "src/main/resources/totp.yaml", ar -> {
+        // parsed once per process, the first instance to get here reads it
+        vertx.<OpenAPI>executeBlocking(parse -> parse.complete(Contract.get()), ar -> {
             if (ar.succeeded()) {
-                OpenAPI3RouterFactory routerFactory = ar.result();
+                OpenAPI contract = ar.result();
+                OpenAPI3RouterFactory routerFactory = Contract.routerFactory(vertx, contract);
+
+                // over-limit clients and secrets get 429 before validation or any HMAC
+                AdmissionHandler admission = AdmissionHandler.shared();
+                if (admission != null) {
+                    routerFactory.addGlobalHandler(admission);
+                }
 
                 // curl http://localhost:8080/secret
                 // {"secret":"RF4T5GRSSFNIL6LX"} // Random
-                routerFactory.addHandlerByOperationId("secretGET", routingContext -> {
-                    String b32Secret = TOTP.b32Secret();
-                    routingContext.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json").setStatusCode(200)
-                            .end(new JsonObject().put("secret", b32Secret).encode());
-                });
+                // curl http://localhost:8080/secret?count=2&length=32
+                // {"secrets":["...","..."]}
+                routerFactory.addHandlerByOperationId("secretGET", operation("secretGET", routingContext -> {
+                    RequestParameters params = routingContext.get("parsedParameters");
+                    RequestParameter count = params.queryParameter("count");
+                    RequestParameter length = params.queryParameter("length");
+                    int secretLength = length != null ? length.getInteger() : 16;
+                    JsonObject secretObject = new JsonObject();
+                    if (count != null) {
+                        JsonArray secrets = new JsonArray();
+                        for (int i = 0; i < count.getInteger(); i++) {
+                            secrets.add(TOTP.b32Secret(secretLength));
+                        }
+                        secretObject.put("secrets", secrets);
+                    } else {
+                        secretObject.put("secret", TOTP.b32Secret(secretLength));
+                    }
+                    Responses.end(routingContext.response(), 200, Responses.JSON, Buffer.buffer(secretObject.encode()));
+                }));
 
                 // curl http://localhost:8080/token/QB5UDBW7OQKYYDZU
 
                 // curl http://localhost:8080/token/QB5UDBW7OQKYYDZU?unixtime=158524245
                 // {"token":"937384"}
-                routerFactory.addHandlerByOperationId("tokenGET", routingContext -> {
+                routerFactory.addHandlerByOperationId("tokenGET", operation("tokenGET", routingContext -> {
                     RequestParameters params = routingContext.get("parsedParameters");
-                    RequestParameter secret = params.pathParameter("secret");
                     RequestParameter millisec = params.queryParameter("millisec");
                     RequestParameter unixtime = params.queryParameter("unixtime");
-                    try {
-                        String totp;
-                        if (millisec != null) {
-                            totp = TOTP.getToken(secret.toString(), millisec.getLong());
-                        } else if (unixtime != null) {
-                            totp = TOTP.getToken(secret.toString(), unixtime.getInteger());
-                        } else {
-                            totp = TOTP.getToken(secret.toString());
-                        }
-                        routingContext.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
-                                .setStatusCode(200).end(new JsonObject().put("token", totp).encode());
-                    } catch (Exception e) {
-                        logger.warn("400: " + routingContext.request().uri());
-                        JsonObject errorObject = new JsonObject();
-                        errorObject.put("code", 400).put("message", "Bad Request");
-                        routingContext.response().setStatusCode(400)
-                                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(errorObject.encode());
-                    }
-                });
+                    token(routingContext, params.pathParameter("secret").toString(),
+                            millisec != null ? millisec.getLong() : -1, unixtime != null ? unixtime.getInteger() : -1);
+                }));
+
+                // curl http://localhost:8080/token/QB5UDBW7OQKYYDZU/range?from=158524245&count=2
+                // {"unixtime":158524230,"token":"937384"}
+                // {"unixtime":158524260,"token":"..."}
+                routerFactory.addHandlerByOperationId("tokenRangeGET",
+                        Metrics.operation("tokenRangeGET", new TokenRangeHandler()));
 
                 // curl
                 // http://localhost:8080/check?secret=QB5UDBW7OQKYYDZU&token=937384&unixtime=158524245
-                // 200
+                // {"offset":0} // 200
                 // curl
                 // http://localhost:8080/check?secret=QB5UDBW7OQKYYDZU&token=825785
                 // 401
-                routerFactory.addHandlerByOperationId("checkGET", routingContext -> {
+                routerFactory.addHandlerByOperationId("checkGET", operation("checkGET", routingContext -> {
                     RequestParameters params = routingContext.get("parsedParameters");
-                    RequestParameter secret = params.queryParameter("secret"); // contract prevents null
-                    RequestParameter token = params.queryParameter("token"); // contract prevents null
                     RequestParameter millisec = params.queryParameter("millisec");
                     RequestParameter unixtime = params.queryParameter("unixtime");
                     RequestParameter window = params.queryParameter("window");
+                    check(routingContext, params.queryParameter("secret").toString(), // contract prevents null
+                            params.queryParameter("token").getInteger(), // contract prevents null
+                            millisec != null ? millisec.getLong() : -1, unixtime != null ? unixtime.getInteger() : -1,
+                            window != null ? window.getInteger() : 0);
+                }));
+
+                // curl -X POST http://localhost:8080/check/batch --data-binary \
+                // '[{"secret":"QB5UDBW7OQKYYDZU","token":937384,"unixtime":158524245}]'
+                // {"status":200,"offset":0,"index":0}
+                routerFactory.setBodyHandler(new StreamingBodyHandler(Collections.singleton(CheckBatchHandler.PATH)));
+                routerFactory.addHandlerByOperationId("checkBatchPOST",
+                        Metrics.operation("checkBatchPOST", new CheckBatchHandler(admission)));
+
+                // curl -X PUT http://localhost:8080/users/42/secret --data '{"secret":"QB5UDBW7OQKYYDZU"}'
+                // 204
+                SecretStore store = SecretStore.shared();
+                routerFactory.addHandlerByOperationId("userSecretPUT", operation("userSecretPUT", routingContext -> {
+                    if (store == null) {
+                        Responses.error(routingContext.response(), 404, null);
+                        return;
+                    }
+                    RequestParameters params = routingContext.get("parsedParameters");
                     try {
-                        boolean checkToken;
-                        if (millisec != null) {
-                            checkToken = TOTP.validate(secret.toString(), token.getInteger(), millisec.getLong(),
-                                    window != null ? window.getInteger() : 0);
-                        } else if (unixtime != null) {
-                            checkToken = TOTP.validate(secret.toString(), token.getInteger(), unixtime.getInteger(),
-                                    window != null ? window.getInteger() : 0);
-                        } else {
-                            checkToken = TOTP.validate(secret.toString(), token.getInteger(),
-                                    window != null ? window.getInteger() : 0);
-                        }
-                        if (checkToken) {
-                            routingContext.response().setStatusCode(200).end();
-                        } else {
-                            routingContext.response().setStatusCode(401).end();
-                            logger.warn("failed: " + routingContext.request().uri());
-                        }
-                    } catch (Exception e) {
-                        logger.warn("400: " + routingContext.request().uri());
-                        JsonObject errorObject = new JsonObject();
-                        errorObject.put("code", 400).put("message", "Bad Request");
-                        routingContext.response().setStatusCode(400)
-                                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(errorObject.encode());
+                        store.put(params.pathParameter("id").getLong(),
+                                params.body().getJsonObject().getString("secret")); // contract prevents null
+                    } catch (IOException e) {
+                        routingContext.fail(e);
+                        return;
                     }
-                });
+                    Responses.end(routingContext.response(), 204);
+                }));
+
+                // curl -X DELETE http://localhost:8080/users/42/secret
+                // 204, or 404 when the user has no secret
+                routerFactory.addHandlerByOperationId("userSecretDELETE",
+                        operation("userSecretDELETE", routingContext -> {
+                            RequestParameters params = routingContext.get("parsedParameters");
+                            try {
+                                if (store == null || !store.delete(params.pathParameter("id").getLong())) {
+                                    Responses.error(routingContext.response(), 404, null);
+                                    return;
+                                }
+                            } catch (IOException e) {
+                                routingContext.fail(e);
+                                return;
+                            }
+                            Responses.end(routingContext.response(), 204);
+                        }));
+
+                // curl http://localhost:8080/users/42/check?token=937384&unixtime=158524245
+                // {"offset":0} // 200, 401 like /check, 404 when the user has no secret,
+                // 429 after too many failed checks
+                routerFactory.addHandlerByOperationId("userCheckGET", operation("userCheckGET", routingContext -> {
+                    RequestParameters params = routingContext.get("parsedParameters");
+                    long id = params.pathParameter("id").getLong();
+                    FailureGuard failures = FailureGuard.shared();
+                    long locked = failures != null ? failures.locked(id) : 0;
+                    if (locked > 0) {
+                        routingContext.response().putHeader(HttpHeaders.RETRY_AFTER,
+                                Long.toString(AdmissionHandler.retryAfter(locked)));
+                        Responses.end(routingContext.response(), 429, Responses.JSON, Responses.TOO_MANY_REQUESTS);
+                        return;
+                    }
+                    String secret;
+                    try {
+                        secret = store != null ? store.get(id) : null;
+                    } catch (GeneralSecurityException e) {
+                        routingContext.fail(e); // record does not decrypt with the configured key
+                        return;
+                    }
+                    if (secret == null) {
+                        Responses.error(routingContext.response(), 404, null);
+                        return;
+                    }
+                    RequestParameter millisec = params.queryParameter("millisec");
+                    RequestParameter unixtime = params.queryParameter("unixtime");
+                    RequestParameter window = params.queryParameter("window");
+                    // a wider window would let each guess cover more tokens
+                    ValidationResult result = check(routingContext, secret,
+                            params.queryParameter("token").getInteger(), // contract prevents null
+                            millisec != null ? millisec.getLong() : -1, unixtime != null ? unixtime.getInteger() : -1,
+                            window != null ? Math.min(window.getInteger(), USER_CHECK_WINDOW) : 0);
+                    if (failures != null && result != null && !result.isValid()) {
+                        failures.failed(id);
+                    }
+                }));
 
                 // curl \
                 // http://localhost:8080/image?secret=QB5UDBW7OQKYYDZU&size=256&label=QRTest
-                // binary image
-                routerFactory.addHandlerByOperationId("imageGET", routingContext -> {
+                // binary image, or svg / json module matrix with format=svg|json or an Accept header
+                routerFactory.addHandlerByOperationId("imageGET", operation("imageGET", routingContext -> {
                     RequestParameters params = routingContext.get("parsedParameters");
                     RequestParameter label = params.queryParameter("label"); // contract prevents null
                     RequestParameter secret = params.queryParameter("secret"); // contract prevents null
                     RequestParameter size = params.queryParameter("size");
+                    RequestParameter format = params.queryParameter("format");
                     String url = TOTP.generateUrl(label.toString(), secret.toString());
-                    Buffer image;
+                    int imageSize = size != null ? size.getInteger() : QR.DEFAULT_SIZE;
+                    QR.Format imageFormat = QR.Format.negotiate(format != null ? format.toString() : null,
+                            routingContext.parsedHeaders().accept().stream().map(MIMEHeader::value)
+                                    .collect(Collectors.toList()));
+                    String etag = QR.etag(url, imageSize, imageFormat);
 
-                    try {
-                        if (size != null) {
-                            image = QR.generateQRCodeImage(url, size.getInteger());
-                        } else {
-                            image = QR.generateQRCodeImage(url);
-                        }
-                        routingContext.response().putHeader(HttpHeaders.CONTENT_TYPE, "image/png")
+                    // enrollment pages re-request the same image, revalidate without rendering
+                    // the image holds the shared secret, so it is never stored by a cache
+                    if (QR.matches(routingContext.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                        routingContext.response().putHeader(HttpHeaders.ETAG, etag)
                                 .putHeader(HttpHeaders.CACHE_CONTROL, "private,no-cache,no-store")
-                                .putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(image.length()))
-                                .setStatusCode(200).write(image).end();
-                    } catch (WriterException | IOException e) {
-                        logger.warn("400: " + routingContext.request().uri());
-                        JsonObject errorObject = new JsonObject();
-                        errorObject.put("code", 400).put("message", "Bad Request");
-                        routingContext.response().setStatusCode(400)
-                                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(errorObject.encode());
+                                .putHeader("Vary", HttpHeaders.ACCEPT);
+                        Responses.end(routingContext.response(), 304);
+                        return;
                     }
 
-                });
+                    try {
+                        Buffer image = QR.generateQRCode(url, imageSize, imageFormat);
+                        routingContext.response().putHeader(HttpHeaders.CACHE_CONTROL, "private,no-cache,no-store")
+                                .putHeader(HttpHeaders.ETAG, etag).putHeader("Vary", HttpHeaders.ACCEPT);
+                        Responses.end(routingContext.response(), 200, imageFormat.getContentType(), image);
+                    } catch (WriterException e) {
+                        EventLog.log(EventLog.Event.BAD_REQUEST, routingContext.request());
+                        Responses.error(routingContext.response(), 400, null);
+                    }
+
+                }));
+
+                // curl http://localhost:8080/metrics
+                // totp_request_duration_seconds{operation="checkGET",quantile="0.99"} 1.87E-4
+                Metrics metrics = Metrics.shared();
+                routerFactory.addHandlerByOperationId("metricsGET", Metrics.operation("metricsGET", routingContext -> {
+                    if (metrics == null) {
+                        Responses.error(routingContext.response(), 404, null);
+                        return;
+                    }
+                    Responses.end(routingContext.response(), 200, Metrics.CONTENT_TYPE,
+                            Buffer.buffer(metrics.render()));
+                }));
 
                 Router router = routerFactory.getRouter();
+                if (metrics != null) {
+                    // ahead of every route, fast path included, so all responses are timed
+                    router.route().order(-2).handler(metrics.requestHandler());
+                    long interval = TimeUnit.MILLISECONDS.toNanos(DELAY_PROBE_MILLIS);
+                    long[] expected = { System.nanoTime() + interval };
+                    delayProbe = vertx.setPeriodic(DELAY_PROBE_MILLIS, id -> {
+                        long now = System.nanoTime();
+                        metrics.eventLoopDelay(now - expected[0]);
+                        expected[0] = now + interval;
+                    });
+                }
+                if (EnvVars._fastPath) {
+                    addFastPath(router, contract);
+                }
                 router.errorHandler(404, routingContext -> {
-                    logger.warn("404: " + routingContext.request().uri());
-                    JsonObject errorObject = new JsonObject();
-                    errorObject.put("code", 404).put("message",
-                            (routingContext.failure() != null) ? routingContext.failure().getMessage() : "Not Found");
-                    routingContext.response().setStatusCode(404).putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
-                            .end(errorObject.encode());
+                    EventLog.log(EventLog.Event.NOT_FOUND, routingContext.request());
+                    Responses.error(routingContext.response(), 404,
+                            (routingContext.failure() != null) ? routingContext.failure().getMessage() : null);
                 });
                 router.errorHandler(400, routingContext -> {
-                    logger.warn("400: " + routingContext.request().uri());
-                    JsonObject errorObject = new JsonObject();
-                    errorObject.put("code", 400).put("message",
-                            (routingContext.failure() != null) ? routingContext.failure().getMessage() : "Bad Request");
-                    routingContext.response().setStatusCode(400).putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
-                            .end(errorObject.encode());
+                    EventLog.log(EventLog.Event.BAD_REQUEST, routingContext.request());
+                    Responses.error(routingContext.response(), 400,
+                            (routingContext.failure() != null) ? routingContext.failure().getMessage() : null);
+                });
+                HttpServerOptions serverOptions = new HttpServerOptions().setCompressionSupported(true)
+                        .setPort(EnvVars._appPort).setIdleTimeout(EnvVars._timeout).setTcpNoDelay(true);
+                if (vertx.isNativeTransportEnabled()) {
+                    // lets several server processes share the port, the kernel spreads connections
+                    serverOptions.setReusePort(true).setTcpFastOpen(true);
+                }
+                server = vertx.createHttpServer(serverOptions);
+                server.requestHandler(router).listen(listening -> {
+                    if (listening.failed()) {
+                        promise.fail(listening.cause());
+                        return;
+                    }
+                    logger.info("TOTPVerticle listening on port " + server.actualPort());
+                    if (EnvVars._binaryPort <= 0) {
+                        promise.complete();
+                        return;
+                    }
+
+                    // service-to-service check, token and secret operations, see BinaryProtocol
+                    NetServerOptions binaryOptions = new NetServerOptions().setPort(EnvVars._binaryPort)
+                            .setIdleTimeout(EnvVars._binaryIdleTimeout).setTcpNoDelay(true);
+                    if (vertx.isNativeTransportEnabled()) {
+                        binaryOptions.setReusePort(true).setTcpFastOpen(true);
+                    }
+                    binaryServer = vertx.createNetServer(binaryOptions);
+                    binaryServer.connectHandler(new BinaryServer()).listen(bound -> {
+                        if (bound.succeeded()) {
+                            logger.info("TOTPVerticle binary protocol on port " + binaryServer.actualPort());
+                            promise.complete();
+                        } else {
+                            promise.fail(bound.cause());
+                        }
+                    });
                 });
-                server = vertx.createHttpServer(new HttpServerOptions().setCompressionSupported(true)
-                        .setPort(EnvVars._appPort).setIdleTimeout(EnvVars._timeout));
-                server.requestHandler(router).listen();
-                logger.info("TOTPVerticle listening on port " + server.actualPort());
-                promise.complete();
             } else {
                 promise.fail(ar.cause());
             }
@@ -171,12 +317,150 @@ public class TOTPVerticle extends AbstractVerticle {
 
     }
 
+    /**
+     * Wraps an operation handler in its execution model and metrics.
+     *
+     * @param operationId operation in totp.yaml
+     * @param handler     operation handler
+     * @return handler to register
+     */
+    private Handler<RoutingContext> operation(String operationId, Handler<RoutingContext> handler) {
+        return Metrics.operation(operationId,
+                OperationExecutor.wrap(vertx, operationId, Metrics.counted(operationId, handler)));
+    }
+
+    /**
+     * Answers a tokenGET request.
+     *
+     * @param routingContext request to answer
+     * @param secret         the TOTP stored shared secret
+     * @param millisec       unix time in milliseconds, -1 when absent
+     * @param unixtime       unix time in seconds, -1 when absent
+     */
+    private static void token(RoutingContext routingContext, String secret, long millisec, long unixtime) {
+        try {
+            int totp;
+            if (millisec >= 0) {
+                totp = TOTP.getTokenValue(secret, millisec);
+            } else if (unixtime >= 0) {
+                totp = TOTP.getTokenValue(secret, unixtime * 1000L);
+            } else {
+                long now = System.currentTimeMillis();
+                totp = TOTP.getTokenValue(secret, now);
+                // current token can be reused until the interval ends
+                routingContext.response().putHeader(HttpHeaders.CACHE_CONTROL, "max-age=" + TOTP.secondsLeft(now));
+            }
+            Responses.end(routingContext.response(), 200, Responses.JSON, Responses.token(totp));
+        } catch (Exception e) {
+            EventLog.log(EventLog.Event.BAD_REQUEST, routingContext.request());
+            Responses.error(routingContext.response(), 400, null);
+        }
+    }
+
+    /**
+     * Answers a checkGET request.
+     *
+     * @param routingContext request to answer
+     * @param secret         the TOTP stored shared secret
+     * @param token          token to check
+     * @param millisec       unix time in milliseconds, -1 when absent
+     * @param unixtime       unix time in seconds, -1 when absent
+     * @param window         intervals to also check before and after
+     * @return the check's result, null when the request was invalid
+     */
+    private static ValidationResult check(RoutingContext routingContext, String secret, int token, long millisec,
+            long unixtime, int window) {
+        try {
+            long timeMillis;
+            if (millisec >= 0) {
+                timeMillis = millisec;
+            } else if (unixtime >= 0) {
+                timeMillis = unixtime * 1000L;
+            } else {
+                timeMillis = System.currentTimeMillis();
+            }
+            ValidationResult checkToken = TOTP.checkOnce(secret, token, timeMillis, window);
+            if (checkToken.isValid()) {
+                Responses.end(routingContext.response(), 200, Responses.JSON, Responses.offset(checkToken.getOffset()));
+            } else if (checkToken.isReplay()) {
+                Responses.end(routingContext.response(), 401);
+                EventLog.log(EventLog.Event.REPLAYED, routingContext.request());
+            } else {
+                Responses.end(routingContext.response(), 401);
+                EventLog.log(EventLog.Event.FAILED, routingContext.request());
+            }
+            return checkToken;
+        } catch (Exception e) {
+            EventLog.log(EventLog.Event.BAD_REQUEST, routingContext.request());
+            Responses.error(routingContext.response(), 400, null);
+            return null;
+        }
+    }
+
+    /**
+     * Routes checkGET and tokenGET ahead of the router factory's routes, parsing
+     * their parameters with precompiled validators instead of the contract
+     * validation handler. Admission control and the execution model still apply.
+     *
+     * @param router  router built by the router factory
+     * @param openAPI parsed contract
+     */
+    private void addFastPath(Router router, OpenAPI openAPI) {
+        FastPath tokenPath = FastPath.compile(openAPI, "tokenGET");
+        int tokenSecret = tokenPath.indexOf("secret");
+        int tokenMillisec = tokenPath.indexOf("millisec");
+        int tokenUnixtime = tokenPath.indexOf("unixtime");
+        addFastRoute(router, tokenPath, operation("tokenGET", routingContext -> {
+            FastPath.Values values = routingContext.get(FAST_VALUES);
+            token(routingContext, values.getString(tokenSecret),
+                    values.has(tokenMillisec) ? values.getLong(tokenMillisec) : -1,
+                    values.has(tokenUnixtime) ? values.getLong(tokenUnixtime) : -1);
+        }));
+
+        FastPath checkPath = FastPath.compile(openAPI, "checkGET");
+        int checkSecret = checkPath.indexOf("secret");
+        int checkToken = checkPath.indexOf("token");
+        int checkMillisec = checkPath.indexOf("millisec");
+        int checkUnixtime = checkPath.indexOf("unixtime");
+        int checkWindow = checkPath.indexOf("window");
+        addFastRoute(router, checkPath, operation("checkGET", routingContext -> {
+            FastPath.Values values = routingContext.get(FAST_VALUES);
+            check(routingContext, values.getString(checkSecret), (int) values.getLong(checkToken),
+                    values.has(checkMillisec) ? values.getLong(checkMillisec) : -1,
+                    values.has(checkUnixtime) ? values.getLong(checkUnixtime) : -1,
+                    (int) values.getLong(checkWindow));
+        }));
+        logger.info("fast path routes " + tokenPath.getRoute() + ", " + checkPath.getRoute());
+    }
+
+    private static void addFastRoute(Router router, FastPath fastPath, Handler<RoutingContext> handler) {
+        AdmissionHandler admission = AdmissionHandler.shared();
+        router.get(fastPath.getRoute()).order(-1).handler(routingContext -> {
+            if (admission != null && !admission.admit(routingContext)) {
+                return;
+            }
+            try {
+                routingContext.put(FAST_VALUES, fastPath.parse(routingContext.request()));
+            } catch (ValidationException e) {
+                routingContext.fail(400, e); // same response as the contract validation
+                return;
+            }
+            handler.handle(routingContext);
+        });
+    }
+
     /**
      * Halts the TOTPVerticle server
      */
     @Override
     public void stop() {
+        if (this.delayProbe >= 0) {
+            vertx.cancelTimer(this.delayProbe);
+        }
         this.server.close();
+        if (this.binaryServer != null) {
+            this.binaryServer.close();
+        }
     }
 
     /**
@@ -186,7 +470,87 @@ public class TOTPVerticle extends AbstractVerticle {
      */
     public static void main(String[] params) {
         EnvVars.init();
-        final Vertx vertx = Vertx.vertx();
-        vertx.deployVerticle(new TOTPVerticle());
+        launch(ar -> {
+            // launch logs the outcome
+        });
+    }
+
+    /**
+     * Configures the process wide caches, guards and limits from
+     * {@link EnvVars} and deploys the verticle instances. Also used to run the
+     * server in-process, such as by the load test.
+     *
+     * @param deployed called once every instance listens, or deployment failed
+     * @return the vertx instance, null when the configuration is unusable
+     */
+    static Vertx launch(Handler<AsyncResult<String>> deployed) {
+        // nothing here draws, but keep any AWT a dependency loads from looking for a display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        Thread warmUp = null;
+        if (EnvVars._warmUp) {
+            // class loading and first renders overlap with deployment instead of the first image request
+            warmUp = new Thread(QR::warmUp, "totp-warm-up");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        }
+        KeyCache.configure(EnvVars._keyCacheSize, EnvVars._keyCacheTtl);
+        TokenCache.configure(EnvVars._tokenCacheSize);
+        ReplayGuard.configure(EnvVars._replayCapacity, EnvVars._replayWindow);
+        QR.configure(EnvVars._qrCacheSize);
+        Responses.configure(EnvVars._compressionThreshold);
+        Metrics.configure(EnvVars._metrics);
+        EventLog.configure(EnvVars._logBuffer, EnvVars._logEvents, EnvVars._logRate);
+        try {
+            SecretStore.configure(EnvVars._storePath, EnvVars._storeKeyFile);
+        } catch (IOException e) {
+            logger.error("secret store unavailable", e);
+            return null;
+        }
+        OperationExecutor.configure(EnvVars._execution, EnvVars._operationThreads, EnvVars._operationQueue);
+        AdmissionHandler.configure(EnvVars._admissionSlots, EnvVars._clientRate, EnvVars._clientBurst,
+                EnvVars._secretRate, EnvVars._secretBurst);
+        FailureGuard.configure(EnvVars._admissionSlots, EnvVars._userFailures, EnvVars._userFailureInterval);
+
+        VertxOptions options = new VertxOptions().setPreferNativeTransport(EnvVars._nativeTransport);
+        if (EnvVars._eventLoops > 0) {
+            options.setEventLoopPoolSize(EnvVars._eventLoops);
+        }
+        if (EnvVars._workerPoolSize > 0) {
+            options.setWorkerPoolSize(EnvVars._workerPoolSize);
+        }
+        final Vertx vertx = Vertx.vertx(options);
+        if (EnvVars._nativeTransport && !vertx.isNativeTransportEnabled()) {
+            logger.warn("native transport unavailable, using NIO");
+        }
+
+        // one instance per event loop, vertx round-robins connections between them
+        int instances = EnvVars._instances > 0 ? EnvVars._instances : options.getEventLoopPoolSize();
+        Thread warmedUp = warmUp;
+        vertx.deployVerticle(TOTPVerticle.class.getName(), new DeploymentOptions().setInstances(instances), ar -> {
+            if (ar.succeeded()) {
+                // JVM start to listening, parsed by the startupTime build task
+                logger.info("deployed " + instances + " TOTPVerticle instances, started in "
+                        + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+                if (EnvVars._exitAfterStart) {
+                    vertx.executeBlocking(join -> {
+                        if (warmedUp != null) {
+                            try {
+                                warmedUp.join();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        join.complete();
+                    }, joined -> vertx.close());
+                }
+            } else {
+                logger.error("deployment failed", ar.cause());
+                vertx.close();
+            }
+            deployed.handle(ar);
+        });
+        return vertx;
     }
 }
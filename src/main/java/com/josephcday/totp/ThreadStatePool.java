@@ -0,0 +1,70 @@
+package com.josephcday.totp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Per thread state for threads too short lived to keep it, such as one virtual
+ * thread per request. The token engines, PNG encoders, entropy pools and
+ * buffers that the service keeps in thread locals are held by a bounded set of
+ * slots instead. A task takes a free slot, waiting for one if need be. The
+ * slot's objects are installed in the running thread's locals, and whatever
+ * the task created is taken back into the slot when it ends. However many
+ * threads come and go, at most one set of state exists per slot, so a
+ * Deflater's native memory or a keyed HMAC midstate is reused rather than
+ * rebuilt per request and left to the garbage collector.
+ *
+ * Taking and returning a slot goes through a blocking queue, so an object
+ * handed from one thread to the next is safely published, and no two threads
+ * use it at once.
+ */
+final class ThreadStatePool {
+    @SuppressWarnings("rawtypes")
+    private static final ThreadLocal[] LOCALS = { TokenEngine.ENGINES, PngEncoder.ENCODERS, EntropyPool.POOLS,
+            Responses.TOKEN_TEMPLATES, SecretStore.DECRYPTORS };
+
+    private final BlockingQueue<Object[]> slots;
+
+    /**
+     * @param size slots, the most tasks that run at once
+     */
+    ThreadStatePool(int size) {
+        slots = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new Object[LOCALS.length]);
+        }
+    }
+
+    /**
+     * Runs a task on the calling thread with a slot's state, waiting for a free
+     * slot. The thread's own locals are left empty afterwards.
+     *
+     * @param task task to run
+     * @throws InterruptedException when interrupted waiting for a slot
+     */
+    @SuppressWarnings("unchecked")
+    void run(Runnable task) throws InterruptedException {
+        Object[] slot = slots.take();
+        try {
+            for (int i = 0; i < LOCALS.length; i++) {
+                if (slot[i] != null) {
+                    LOCALS[i].set(slot[i]);
+                }
+            }
+            task.run();
+        } finally {
+            for (int i = 0; i < LOCALS.length; i++) {
+                slot[i] = LOCALS[i].get();
+                LOCALS[i].remove();
+            }
+            slots.add(slot);
+        }
+    }
+
+    /**
+     * @return slots not taken by a running task
+     */
+    int getFree() {
+        return slots.size();
+    }
+}
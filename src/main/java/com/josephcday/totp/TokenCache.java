@@ -0,0 +1,118 @@
+package com.josephcday.totp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of tokens for the current 30 second interval. Entries are held
+ * in one generation per interval, and the whole generation is dropped when the
+ * wall clock crosses into the next interval, so a cached token never outlives
+ * its step. Lookups for any other interval bypass the cache.
+ */
+public final class TokenCache {
+    private static volatile TokenCache shared; // null when disabled
+
+    private final int capacity;
+    private final AtomicReference<Generation> generation = new AtomicReference<>(new Generation(-1));
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity maximum number of tokens cached per interval
+     */
+    public TokenCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets up the process wide cache used by {@link TOTP}.
+     *
+     * @param capacity maximum number of tokens cached per interval, 0 or less
+     *                 disables the cache
+     */
+    public static void configure(int capacity) {
+        shared = capacity > 0 ? new TokenCache(capacity) : null;
+    }
+
+    /**
+     * @return the process wide cache, or null when disabled
+     */
+    public static TokenCache shared() {
+        return shared;
+    }
+
+    /**
+     * Gets a cached token.
+     *
+     * @param b32Secret the TOTP stored shared secret
+     * @param step      the time-step counter
+     * @return the token, or null when not cached or step is not the current
+     *         interval
+     */
+    public Integer get(String b32Secret, long step) {
+        Generation current = current();
+        if (current.step != step) {
+            return null;
+        }
+        Integer token = current.tokens.get(b32Secret);
+        if (token != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return token;
+    }
+
+    /**
+     * Caches a token. Ignored when step is not the current interval or the
+     * interval is already full.
+     *
+     * @param b32Secret the TOTP stored shared secret
+     * @param step      the time-step counter
+     * @param token     the one-time password integer
+     */
+    public void put(String b32Secret, long step, int token) {
+        Generation current = current();
+        if (current.step == step && current.tokens.size() < capacity) {
+            current.tokens.put(b32Secret, token);
+        }
+    }
+
+    /**
+     * @return number of tokens cached for the current interval
+     */
+    public int size() {
+        return current().tokens.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Generation current() {
+        long step = TOTP.step(System.currentTimeMillis());
+        Generation current = generation.get();
+        while (current.step < step) {
+            Generation next = new Generation(step);
+            if (generation.compareAndSet(current, next)) {
+                return next;
+            }
+            current = generation.get();
+        }
+        return current;
+    }
+
+    private static final class Generation {
+        private final long step;
+        private final ConcurrentHashMap<String, Integer> tokens = new ConcurrentHashMap<>();
+
+        private Generation(long step) {
+            this.step = step;
+        }
+    }
+}
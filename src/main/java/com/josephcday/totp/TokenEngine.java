@@ -0,0 +1,157 @@
+package com.josephcday.totp;
+
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+
+/**
+ * Reusable HMAC token engine. One engine is kept per thread, so each vertx
+ * event loop keeps its own HMAC midstate, key and hash buffers and steady-state
+ * token generation does not allocate.
+ *
+ * Engines are not thread safe. Obtain one with {@link #get()}, or
+ * {@link #create()} for a dedicated engine, and do not hand it to another
+ * thread.
+ */
+public final class TokenEngine {
+    private static final int HASH_LENGTH = HmacSha1.HASH_LENGTH;
+    private static final int TOKEN_MODULUS = 1000000; // keep last 6 digits
+    private static final byte[] DECODE_TABLE = new byte[128];
+    static final ThreadLocal<TokenEngine> ENGINES = new ThreadLocal<>(); // also lent out by ThreadStatePool
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        for (int i = 0; i < TOTP.BASE32_CHARS.length(); i++) {
+            char c = TOTP.BASE32_CHARS.charAt(i);
+            DECODE_TABLE[c] = (byte) i;
+            DECODE_TABLE[Character.toLowerCase(c)] = (byte) i;
+        }
+    }
+
+    private final HmacSha1 hmac = new HmacSha1();
+    private final byte[] hash = new byte[HASH_LENGTH];
+    private byte[] key = new byte[64];
+    private String secret; // secret the hmac is currently keyed with
+    private long generated; // tokens generated, read by Metrics
+
+    private TokenEngine() {
+    }
+
+    /**
+     * Gets the token engine bound to the calling thread, creating it on first use.
+     *
+     * @return this thread's token engine
+     */
+    public static TokenEngine get() {
+        TokenEngine engine = ENGINES.get();
+        if (engine == null) {
+            engine = new TokenEngine();
+            ENGINES.set(engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Creates an engine that is not bound to the calling thread. Used by work that
+     * spans several event loop turns, where other requests on the same thread
+     * would re-key the shared engine in between.
+     *
+     * @return a new token engine
+     */
+    public static TokenEngine create() {
+        return new TokenEngine();
+    }
+
+    /**
+     * Keys the engine with a base32 secret. Does nothing if the engine is already
+     * keyed with the same secret, and uses the shared {@link KeyCache} when one is
+     * configured.
+     *
+     * @param b32Secret the TOTP stored shared secret
+     * @return this engine
+     * @throws InvalidKeyException exception
+     */
+    public TokenEngine init(String b32Secret) throws InvalidKeyException {
+        if (b32Secret.equals(secret)) {
+            return this;
+        }
+        secret = null;
+        KeyCache cache = KeyCache.shared();
+        if (cache == null || !cache.load(b32Secret, hmac)) {
+            int length = decode(b32Secret);
+            hmac.init(key, length);
+            Arrays.fill(key, 0, length, (byte) 0);
+            if (cache != null) {
+                cache.store(b32Secret, hmac);
+            }
+        }
+        secret = b32Secret;
+        return this;
+    }
+
+    /**
+     * Generates an integer token for a TOTP time-step counter using the current
+     * key.
+     *
+     * @param step the time-step counter, unix seconds divided by the interval
+     * @return the one-time password integer
+     */
+    public int generate(long step) {
+        hmac.doFinal(step, hash);
+        generated++;
+
+        // get offset from hash, then hash bytes as int from offset, dropping top bit
+        int offset = hash[HASH_LENGTH - 1] & 0xF;
+        int retData = (hash[offset] & 0x7F) << 24 | (hash[offset + 1] & 0xFF) << 16
+                | (hash[offset + 2] & 0xFF) << 8 | (hash[offset + 3] & 0xFF);
+        return retData % TOKEN_MODULUS;
+    }
+
+    /**
+     * @return number of tokens this engine has generated, one HMAC each
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Decodes a base32 secret into the reused key array. Lowercase letters are
+     * accepted, characters outside the alphabet are skipped and padding ends the
+     * secret, matching commons-codec.
+     *
+     * @param b32Secret the TOTP stored shared secret
+     * @return number of key bytes decoded
+     * @throws InvalidKeyException when the secret decodes to nothing or has
+     *                             trailing bits set
+     */
+    private int decode(String b32Secret) throws InvalidKeyException {
+        int length = 0;
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < b32Secret.length(); i++) {
+            char c = b32Secret.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+            if (value < 0) {
+                continue;
+            }
+            buffer = buffer << 5 | value;
+            bits += 5;
+            if (bits >= 8) {
+                bits -= 8;
+                if (length == key.length) {
+                    key = Arrays.copyOf(key, length * 2);
+                }
+                key[length++] = (byte) (buffer >>> bits);
+            }
+        }
+        if ((buffer & ((1 << bits) - 1)) != 0) {
+            throw new InvalidKeyException("Secret has non-zero trailing bits");
+        }
+        if (length == 0) {
+            throw new InvalidKeyException("Empty secret");
+        }
+        return length;
+    }
+}
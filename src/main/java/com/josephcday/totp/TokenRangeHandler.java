@@ -0,0 +1,106 @@
+package com.josephcday.totp;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.RequestParameter;
+import io.vertx.ext.web.api.RequestParameters;
+
+/**
+ * Handler for GET /token/{secret}/range. Walks the interval counters from
+ * 'from' to 'to' (or 'count' intervals) and streams one newline-delimited JSON
+ * line per interval. Lines are written in chunks, and the walk stops while the
+ * response write queue is full and continues from the drain handler, so a range
+ * is never buffered in memory, however many millions of intervals it covers.
+ */
+public class TokenRangeHandler implements Handler<RoutingContext> {
+    static final long MAX_UNIXTIME = Long.MAX_VALUE / 1000; // largest 'from' or 'to', same as totp.yaml
+    private static final int CHUNK_STEPS = 512; // intervals per response write
+    private static final int LINE_LENGTH = 40; // {"unixtime":1585242450,"token":"937384"}\n
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        RequestParameters params = routingContext.get("parsedParameters");
+        RequestParameter secret = params.pathParameter("secret"); // contract prevents null
+        RequestParameter from = params.queryParameter("from"); // contract prevents null
+        RequestParameter to = params.queryParameter("to");
+        RequestParameter count = params.queryParameter("count");
+
+        TokenEngine engine = TokenEngine.create();
+        long first;
+        long last;
+        try {
+            if (from.getLong() > MAX_UNIXTIME || (to != null && to.getLong() > MAX_UNIXTIME)) {
+                throw new IllegalArgumentException("time out of range");
+            }
+            first = TOTP.step(from.getLong() * 1000L);
+            if (to != null) {
+                last = TOTP.step(to.getLong() * 1000L);
+            } else {
+                last = first + (count != null ? count.getInteger() : 1) - 1;
+            }
+            if (last < first) {
+                throw new IllegalArgumentException("'to' is before 'from'");
+            }
+            engine.init(secret.toString());
+        } catch (Exception e) {
+            EventLog.log(EventLog.Event.BAD_REQUEST, routingContext.request());
+            Responses.error(routingContext.response(), 400, null);
+            return;
+        }
+
+        HttpServerResponse response = routingContext.response();
+        response.setChunked(true).putHeader(HttpHeaders.CONTENT_TYPE, "application/x-ndjson").setStatusCode(200);
+        new Walk(response, engine, first, last).run();
+    }
+
+    /**
+     * State of one streaming range, resumed from the drain handler.
+     */
+    private static final class Walk implements Runnable {
+        private final HttpServerResponse response;
+        private final TokenEngine engine;
+        private final long last;
+        private long next;
+        private boolean closed;
+
+        private Walk(HttpServerResponse response, TokenEngine engine, long first, long last) {
+            this.response = response;
+            this.engine = engine;
+            this.next = first;
+            this.last = last;
+            response.closeHandler(v -> closed = true);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                long end = Math.min(last, next + CHUNK_STEPS - 1);
+                Buffer chunk = Buffer.buffer((int) (end - next + 1) * LINE_LENGTH);
+                for (; next <= end; next++) {
+                    appendLine(chunk, next, engine.generate(next));
+                }
+                if (next > last) {
+                    response.end(chunk);
+                    return;
+                }
+                response.write(chunk);
+                if (response.writeQueueFull()) {
+                    response.drainHandler(v -> run());
+                    return;
+                }
+            }
+        }
+
+        private static void appendLine(Buffer chunk, long step, int token) {
+            chunk.appendString("{\"unixtime\":").appendString(Long.toString(TOTP.unixtime(step)))
+                    .appendString(",\"token\":\"");
+            for (int divisor = 100000; divisor > 0; divisor /= 10) {
+                chunk.appendByte((byte) ('0' + token / divisor % 10));
+            }
+            chunk.appendString("\"}\n");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.josephcday.totp;
+
+/**
+ * Outcome of a windowed token check. A passing result carries the drift offset,
+ * in 30 second intervals, of the interval that matched.
+ */
+public final class ValidationResult {
+    private static final int CACHED_OFFSETS = 16; // results for small offsets are shared
+    public static final ValidationResult FAILED = new ValidationResult(false, 0);
+    public static final ValidationResult REPLAYED = new ValidationResult(false, 0);
+    private static final ValidationResult[] PASSED = new ValidationResult[CACHED_OFFSETS * 2 + 1];
+
+    static {
+        for (int i = 0; i < PASSED.length; i++) {
+            PASSED[i] = new ValidationResult(true, i - CACHED_OFFSETS);
+        }
+    }
+
+    private final boolean valid;
+    private final int offset;
+
+    private ValidationResult(boolean valid, int offset) {
+        this.valid = valid;
+        this.offset = offset;
+    }
+
+    /**
+     * Gets a passing result for a matched offset.
+     *
+     * @param offset intervals between the checked time and the matching interval
+     * @return passing result
+     */
+    public static ValidationResult passed(int offset) {
+        if (offset >= -CACHED_OFFSETS && offset <= CACHED_OFFSETS) {
+            return PASSED[offset + CACHED_OFFSETS];
+        }
+        return new ValidationResult(true, offset);
+    }
+
+    /**
+     * @return true indicates the token passed
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return true indicates the token matched but was already used
+     */
+    public boolean isReplay() {
+        return this == REPLAYED;
+    }
+
+    /**
+     * @return matched interval offset, negative for past intervals. 0 when the
+     *         check failed.
+     */
+    public int getOffset() {
+        return offset;
+    }
+}
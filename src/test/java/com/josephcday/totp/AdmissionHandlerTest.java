@@ -0,0 +1,46 @@
+package com.josephcday.totp;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.Router;
+
+public class AdmissionHandlerTest {
+    private static Vertx vertx;
+    private static int port;
+
+    @BeforeClass
+    public static void listen() throws Exception {
+        vertx = Vertx.vertx();
+        Router router = Router.router(vertx);
+        router.route().handler(new AdmissionHandler(null, new RateLimiter(64, 1, 1)));
+        router.route().handler(routingContext -> Responses.end(routingContext.response(), 200));
+        port = TestHttp.listen(vertx, router).actualPort();
+    }
+
+    @AfterClass
+    public static void close() {
+        vertx.close();
+    }
+
+    @Test
+    public void testSecretBuckets() throws Exception {
+        assertEquals(200, TestHttp.get(vertx, port, "/token/QB5UDBW7OQKYYDZU?unixtime=1").status);
+        assertEquals(429, TestHttp.get(vertx, port, "/check?secret=QB5UDBW7OQKYYDZU&token=1").status);
+        assertEquals(200, TestHttp.get(vertx, port, "/check?secret=GEZDGNBVGY3TQOJQ&token=1").status);
+    }
+
+    @Test
+    public void testUserBuckets() throws Exception {
+        TestHttp.Response response = TestHttp.get(vertx, port, "/users/42/check?token=1");
+        assertEquals(200, response.status);
+        response = TestHttp.get(vertx, port, "/users/42/check?token=2&window=120");
+        assertEquals(429, response.status);
+        assertEquals("1", response.headers.get("Retry-After"));
+        assertEquals(429, TestHttp.get(vertx, port, "/users/42/secret").status); // same user, same bucket
+        assertEquals(200, TestHttp.get(vertx, port, "/users/43/check?token=1").status);
+    }
+}
@@ -0,0 +1,154 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+
+public class BinaryServerTest {
+    private static final String SECRET = "QB5UDBW7OQKYYDZU";
+
+    @Test
+    public void testCheckFrame() {
+        Buffer passed = BinaryServer.process(check(7, SECRET, 937384, 158524200000L, 2), "10.0.0.1");
+        assertEquals(BinaryProtocol.RESPONSE_HEADER + 4, passed.getInt(0));
+        assertEquals(BinaryProtocol.CHECK, passed.getByte(4));
+        assertEquals(7, passed.getInt(5));
+        assertEquals(BinaryProtocol.OK, passed.getShort(9));
+        assertEquals(1, passed.getInt(11));
+
+        Buffer failed = BinaryServer.process(check(8, SECRET, 111111, 158524245000L, 0), "10.0.0.1");
+        assertEquals(BinaryProtocol.FAILED, failed.getShort(9));
+    }
+
+    @Test
+    public void testTokenFrame() {
+        Buffer request = Buffer.buffer().appendByte(BinaryProtocol.TOKEN).appendInt(3)
+                .appendByte((byte) SECRET.length()).appendString(SECRET).appendLong(158524245000L);
+        Buffer response = BinaryServer.process(request, "10.0.0.1");
+        assertEquals(BinaryProtocol.OK, response.getShort(9));
+        assertEquals(937384, response.getInt(11));
+    }
+
+    @Test
+    public void testIssuedSecretLengths() throws InvalidKeyException {
+        for (int length : new int[] { 16, 26, 32 }) {
+            String secret = TOTP.b32Secret(length);
+            int token = TOTP.getTokenValue(secret, 158524245000L);
+            Buffer request = Buffer.buffer().appendByte(BinaryProtocol.TOKEN).appendInt(3)
+                    .appendByte((byte) length).appendString(secret).appendLong(158524245000L);
+            Buffer response = BinaryServer.process(request, "10.0.0.1");
+            assertEquals(BinaryProtocol.OK, response.getShort(9));
+            assertEquals(token, response.getInt(11));
+            assertEquals(BinaryProtocol.OK,
+                    BinaryServer.process(check(4, secret, token, 158524245000L, 0), "10.0.0.1").getShort(9));
+        }
+        assertEquals(BinaryProtocol.BAD_REQUEST, BinaryServer
+                .process(check(1, TOTP.b32Secret(20), 1, 0, 0), "10.0.0.1").getShort(9));
+    }
+
+    @Test
+    public void testFailuresLoggedAndCounted() throws InvalidKeyException {
+        // only the first event of each type is written, the rest are counted as sampled
+        EventLog.configure(0, "failed=1000,replayed=1000", 0);
+        Metrics.configure(true);
+        ReplayGuard.configure(1024, 2);
+        try {
+            String secret = TOTP.b32Secret(26);
+            long now = System.currentTimeMillis();
+            int token = TOTP.getTokenValue(secret, now);
+            int wrong = (token + 1) % 1000000;
+            BinaryServer.process(check(1, secret, wrong, now, 0), "10.0.0.1");
+            BinaryServer.process(check(2, secret, wrong, now, 0), "10.0.0.1");
+            BinaryServer.process(check(3, secret, token, now, 0), "10.0.0.1");
+            assertEquals(BinaryProtocol.FAILED, BinaryServer.process(check(4, secret, token, now, 0), "10.0.0.1")
+                    .getShort(9));
+            BinaryServer.process(check(5, secret, token, now, 0), "10.0.0.1");
+            assertEquals(2, EventLog.shared().getSampled());
+
+            String text = Metrics.shared().render();
+            assertTrue(text.contains("totp_requests_total{operation=\"binaryCheck\",status=\"200\"} 1\n"));
+            assertTrue(text.contains("totp_requests_total{operation=\"binaryCheck\",status=\"401\"} 4\n"));
+            assertTrue(text.contains("totp_request_duration_seconds_count{operation=\"binaryCheck\"} 5\n"));
+        } finally {
+            EventLog.configure(0, "", 0);
+            Metrics.configure(false);
+            ReplayGuard.configure(0, 0);
+        }
+    }
+
+    @Test
+    public void testBadFrames() {
+        assertEquals(BinaryProtocol.BAD_REQUEST,
+                BinaryServer.process(check(1, "QB5UDBW7OQKYYDZ1", 1, 0, 0), "10.0.0.1").getShort(9));
+        assertEquals(BinaryProtocol.BAD_REQUEST,
+                BinaryServer.process(check(1, SECRET, 1000000, 0, 0), "10.0.0.1").getShort(9));
+        assertEquals(BinaryProtocol.BAD_REQUEST,
+                BinaryServer.process(check(1, SECRET, 1, -5, 0), "10.0.0.1").getShort(9));
+        assertEquals(BinaryProtocol.BAD_REQUEST,
+                BinaryServer.process(check(1, SECRET, 1, 0, 0).appendByte((byte) 0), "10.0.0.1").getShort(9));
+        assertEquals(BinaryProtocol.BAD_REQUEST, BinaryServer
+                .process(Buffer.buffer().appendByte((byte) 99).appendInt(1), "10.0.0.1").getShort(9));
+        assertEquals(BinaryProtocol.BAD_REQUEST, BinaryServer.process(
+                Buffer.buffer().appendByte(BinaryProtocol.SECRET).appendInt(1).appendByte((byte) 20), "10.0.0.1")
+                .getShort(9));
+    }
+
+    @Test
+    public void testPipelinedClient() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            CompletableFuture<NetServer> listening = new CompletableFuture<>();
+            vertx.createNetServer().connectHandler(new BinaryServer()).listen(0, ar -> listening.complete(ar.result()));
+            int port = listening.get(10, TimeUnit.SECONDS).actualPort();
+
+            CompletableFuture<BinaryClient> connected = new CompletableFuture<>();
+            BinaryClient.connect(vertx, "localhost", port, ar -> connected.complete(ar.result()));
+            BinaryClient client = connected.get(10, TimeUnit.SECONDS);
+
+            int requests = 200;
+            CountDownLatch done = new CountDownLatch(requests + 2);
+            ConcurrentHashMap<Integer, Integer> offsets = new ConcurrentHashMap<>();
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                client.check(SECRET, 937384, 158524245000L + (i % 3 - 1) * 30000L, 1, ar -> {
+                    offsets.put(index, ar.result().getOffset());
+                    done.countDown();
+                });
+            }
+            String[] results = new String[2];
+            client.token(SECRET, 158524245000L, ar -> {
+                results[0] = ar.result();
+                done.countDown();
+            });
+            client.secret(32, ar -> {
+                results[1] = ar.result();
+                done.countDown();
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < requests; i++) {
+                assertEquals(1 - i % 3, (int) offsets.get(i));
+            }
+            assertEquals("937384", results[0]);
+            assertEquals(32, results[1].length());
+            client.close();
+        } finally {
+            vertx.close();
+        }
+    }
+
+    private static Buffer check(int id, String secret, int token, long timeMillis, int window) {
+        return Buffer.buffer().appendByte(BinaryProtocol.CHECK).appendInt(id).appendByte((byte) secret.length())
+                .appendBytes(secret.getBytes(StandardCharsets.US_ASCII)).appendInt(token).appendLong(timeMillis)
+                .appendByte((byte) window);
+    }
+}
@@ -0,0 +1,152 @@
+package com.josephcday.totp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+
+public class CheckBatchHandlerTest {
+    private static final String ITEM = "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":937384,\"unixtime\":158524245}";
+    private Vertx vertx;
+    private int port;
+    private final List<Throwable> unhandled = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void listen() throws Exception {
+        vertx = Vertx.vertx();
+        vertx.exceptionHandler(unhandled::add);
+        Router router = Router.router(vertx);
+        router.post(CheckBatchHandler.PATH).handler(new CheckBatchHandler(null));
+        port = TestHttp.listen(vertx, router).actualPort();
+    }
+
+    @After
+    public void close() {
+        vertx.close();
+    }
+
+    @Test
+    public void testArrayBody() throws Exception {
+        TestHttp.Response response = TestHttp.post(vertx, port, CheckBatchHandler.PATH,
+                Buffer.buffer("[" + ITEM + ",{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":111111},7]"));
+        assertEquals(200, response.status);
+        assertEquals("application/x-ndjson", response.headers.get("Content-Type"));
+        String[] lines = response.lines();
+        assertEquals(3, lines.length);
+        assertEquals(new JsonObject().put("status", 200).put("offset", 0).put("index", 0), new JsonObject(lines[0]));
+        assertEquals(401, (int) new JsonObject(lines[1]).getInteger("status"));
+        assertEquals(400, (int) new JsonObject(lines[2]).getInteger("status"));
+        assertEquals(2, (int) new JsonObject(lines[2]).getInteger("index"));
+    }
+
+    @Test
+    public void testNewlineDelimitedBody() throws Exception {
+        TestHttp.Response response = TestHttp.post(vertx, port, CheckBatchHandler.PATH,
+                Buffer.buffer(ITEM + "\n" + ITEM + "\n"));
+        String[] lines = response.lines();
+        assertEquals(2, lines.length);
+        assertEquals(1, (int) new JsonObject(lines[1]).getInteger("index"));
+        assertEquals(200, (int) new JsonObject(lines[1]).getInteger("status"));
+    }
+
+    @Test
+    public void testMalformedBody() throws Exception {
+        for (String body : new String[] { "[" + ITEM + ",{bad", "}", "[" + ITEM + "]]]]" }) {
+            TestHttp.Response response = TestHttp.post(vertx, port, CheckBatchHandler.PATH, Buffer.buffer(body));
+            String[] lines = response.lines();
+            JsonObject last = new JsonObject(lines[lines.length - 1]);
+            assertEquals(body, 400, (int) last.getInteger("status"));
+            assertEquals(body, "Malformed JSON", last.getString("message"));
+        }
+        // the server keeps answering new requests after malformed bodies
+        assertEquals(1, TestHttp.post(vertx, port, CheckBatchHandler.PATH, Buffer.buffer(ITEM)).lines().length);
+        assertTrue(unhandled.toString(), unhandled.isEmpty());
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        int items = 20000;
+        StringBuilder body = new StringBuilder(items * (ITEM.length() + 1));
+        for (int i = 0; i < items; i++) {
+            body.append(ITEM).append('\n');
+        }
+        // the response is left unread long enough to fill the server's write queue
+        TestHttp.Response response = TestHttp.send(vertx, HttpMethod.POST, port, CheckBatchHandler.PATH,
+                Buffer.buffer(body.toString()), MultiMap.caseInsensitiveMultiMap(), 300);
+        String[] lines = response.lines();
+        assertEquals(items, lines.length);
+        for (int i = 0; i < items; i++) {
+            assertEquals(i, (int) new JsonObject(lines[i]).getInteger("index"));
+        }
+        assertTrue(unhandled.toString(), unhandled.isEmpty());
+    }
+
+    @Test
+    public void testItems() {
+        JsonObject pass = CheckBatchHandler.check(new JsonObject().put("secret", "QB5UDBW7OQKYYDZU")
+                .put("token", 937384).put("unixtime", 158524200).put("window", 2));
+        assertEquals(200, (int) pass.getInteger("status"));
+        assertEquals(1, (int) pass.getInteger("offset"));
+
+        JsonObject fail = CheckBatchHandler.check(new JsonObject().put("secret", "QB5UDBW7OQKYYDZU")
+                .put("token", 111111).put("millisec", 158524245000L));
+        assertEquals(401, (int) fail.getInteger("status"));
+    }
+
+    @Test
+    public void testItemsChargedToSecret() {
+        AdmissionHandler admission = new AdmissionHandler(null, new RateLimiter(16, 1, 2));
+        JsonObject item = new JsonObject().put("secret", "QB5UDBW7OQKYYDZU").put("token", 111111);
+        assertEquals(401, (int) CheckBatchHandler.check(item, admission).getInteger("status"));
+        assertEquals(401, (int) CheckBatchHandler.check(item, admission).getInteger("status"));
+        JsonObject limited = CheckBatchHandler.check(item, admission);
+        assertEquals(429, (int) limited.getInteger("status"));
+        assertEquals(1, (long) limited.getLong("retryAfter"));
+        // other secrets have their own bucket
+        assertEquals(401, (int) CheckBatchHandler
+                .check(item.copy().put("secret", "RF4T5GRSSFNIL6LX"), admission).getInteger("status"));
+    }
+
+    @Test
+    public void testInvalidItems() {
+        assertEquals(400, (int) CheckBatchHandler.check(null).getInteger("status"));
+        assertEquals(400, (int) CheckBatchHandler.check(new JsonObject().put("secret", "short").put("token", 1))
+                .getInteger("status"));
+        assertEquals(400, (int) CheckBatchHandler
+                .check(new JsonObject().put("secret", "QB5UDBW7OQKYYDZU").put("token", "x")).getInteger("status"));
+        assertEquals(400, (int) CheckBatchHandler.check(
+                new JsonObject().put("secret", "QB5UDBW7OQKYYDZU").put("token", 1).put("window", 1000))
+                .getInteger("status"));
+        assertEquals(400, (int) CheckBatchHandler
+                .check(new JsonObject().put("secret", "QB5UDBW7OQKYYDZU!!!").put("token", 1)).getInteger("status"));
+    }
+
+    @Test
+    public void testNumbersNotNarrowed() throws Exception {
+        // each would pass if narrowed to an int, 4295904680 is 937384 + 2^32
+        String[] items = { "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":4295904680,\"unixtime\":158524245}",
+                "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":937384.7,\"unixtime\":158524245}",
+                "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":937384,\"unixtime\":158524245.9}",
+                "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":937384,\"unixtime\":4453491541}",
+                "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":937384,\"unixtime\":158524245,\"window\":4294967296}",
+                "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":937384,\"millisec\":158524245000.5}",
+                "{\"secret\":\"QB5UDBW7OQKYYDZU\",\"token\":937384,\"millisec\":18446744073709551616}" };
+        TestHttp.Response response = TestHttp.post(vertx, port, CheckBatchHandler.PATH,
+                Buffer.buffer("[" + String.join(",", items) + "]"));
+        String[] lines = response.lines();
+        assertEquals(items.length, lines.length);
+        for (int i = 0; i < items.length; i++) {
+            assertEquals(items[i], 400, (int) new JsonObject(lines[i]).getInteger("status"));
+        }
+    }
+}
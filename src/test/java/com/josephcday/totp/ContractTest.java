@@ -0,0 +1,106 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.parser.ResolverCache;
+import io.swagger.v3.parser.core.models.ParseOptions;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
+import io.vertx.ext.web.api.contract.openapi3.impl.OpenAPI3RouterFactoryImpl;
+import io.vertx.ext.web.api.contract.openapi3.impl.OpenApi3Utils;
+
+public class ContractTest {
+
+    @Test
+    public void testParsedOnce() {
+        OpenAPI contract = Contract.get();
+        assertSame(contract, Contract.get());
+        assertNotNull(contract.getPaths().get("/check"));
+        assertNotNull(contract.getPaths().get("/token/{secret}"));
+    }
+
+    @Test
+    public void testCheckItem() {
+        assertEquals(999999, Contract.CheckItem.MAX_TOKEN);
+        assertEquals(120, Contract.CheckItem.MAX_WINDOW);
+        assertEquals(new HashSet<>(Arrays.asList(16, 26, 32)), Contract.CheckItem.SECRET_LENGTHS);
+        for (int length : Contract.CheckItem.SECRET_LENGTHS) {
+            assertTrue(Contract.CheckItem.SECRET.matcher(TOTP.b32Secret(length)).matches());
+        }
+        assertFalse(Contract.CheckItem.SECRET.matcher(TOTP.b32Secret(20)).matches());
+    }
+
+    @Test
+    public void testRouterFactories() {
+        Vertx vertx = Vertx.vertx();
+        try {
+            // one parsed contract, a router factory per verticle instance
+            for (int i = 0; i < 2; i++) {
+                OpenAPI3RouterFactory routerFactory = Contract.routerFactory(vertx, Contract.get());
+                routerFactory.addHandlerByOperationId("checkGET", routingContext -> routingContext.response().end());
+                Router router = routerFactory.getRouter();
+                assertFalse(router.getRoutes().isEmpty());
+            }
+        } finally {
+            vertx.close();
+        }
+    }
+
+    /**
+     * Contract depends on vertx-web-api-contract internals. When this fails after
+     * a vertx upgrade, check that OpenAPI3RouterFactory.create still parses with
+     * OpenApi3Utils.getParseOptions() and builds an OpenAPI3RouterFactoryImpl
+     * the same way, then update the version here and in Contract.
+     */
+    @Test
+    public void testInternalsPinned() throws Exception {
+        assertEquals("Contract.routerFactory mirrors vertx-web-api-contract internals, re-check them", "3.8.5",
+                OpenAPI3RouterFactoryImpl.class.getPackage().getImplementationVersion());
+        assertTrue(Modifier.isPublic(OpenAPI3RouterFactoryImpl.class
+                .getConstructor(Vertx.class, OpenAPI.class, ResolverCache.class).getModifiers()));
+        assertEquals(ParseOptions.class, OpenApi3Utils.class.getMethod("getParseOptions").getReturnType());
+    }
+
+    @Test
+    public void testSameRoutesAsCreate() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            CompletableFuture<OpenAPI3RouterFactory> created = new CompletableFuture<>();
+            OpenAPI3RouterFactory.create(vertx, "src/main/resources/" + Contract.RESOURCE, ar -> {
+                if (ar.succeeded()) {
+                    created.complete(ar.result());
+                } else {
+                    created.completeExceptionally(ar.cause());
+                }
+            });
+            List<String> paths = paths(Contract.routerFactory(vertx, Contract.get()));
+            assertTrue(paths.contains("/check"));
+            assertEquals(paths(created.get(10, TimeUnit.SECONDS)), paths);
+        } finally {
+            vertx.close();
+        }
+    }
+
+    /**
+     * Route paths in order, null for routes with path parameters, which are
+     * matched by pattern.
+     */
+    private static List<String> paths(OpenAPI3RouterFactory routerFactory) {
+        for (String operationId : new String[] { "checkGET", "tokenGET", "userCheckGET" }) {
+            routerFactory.addHandlerByOperationId(operationId, routingContext -> routingContext.response().end());
+        }
+        return routerFactory.getRouter().getRoutes().stream().map(Route::getPath).collect(Collectors.toList());
+    }
+}
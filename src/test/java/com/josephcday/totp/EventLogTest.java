@@ -0,0 +1,98 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import io.vertx.core.json.JsonObject;
+
+public class EventLogTest {
+    @Test
+    public void testRedact() {
+        String check = EventLog.redact("/check?secret=QB5UDBW7OQKYYDZU&token=937384");
+        assertFalse(check.contains("QB5UDBW7OQKYYDZU"));
+        assertTrue(check.matches("/check\\?secret=\\*[0-9a-f]{8}&token=937384"));
+        String token = EventLog.redact("/token/QB5UDBW7OQKYYDZU/range?from=1");
+        assertTrue(token.matches("/token/\\*[0-9a-f]{8}/range\\?from=1"));
+        assertEquals(check.substring(14, 23), token.substring(7, 16)); // same secret, same fingerprint
+        assertEquals("/secret?count=2", EventLog.redact("/secret?count=2"));
+    }
+
+    @Test
+    public void testWritesJsonLines() throws Exception {
+        EventLog log = new EventLog(4, "", 0);
+        assertTrue(log.publish(EventLog.Event.FAILED, "10.0.0.1", "/check?secret=QB5UDBW7OQKYYDZU&token=1"));
+        assertTrue(log.publish(EventLog.Event.BAD_FRAME, null, "frame length 9000"));
+        StringWriter out = new StringWriter();
+        assertEquals(2, log.drain(out));
+        String[] lines = out.toString().split("\n");
+        JsonObject failed = new JsonObject(lines[0]);
+        assertEquals("failed", failed.getString("event"));
+        assertEquals("10.0.0.1", failed.getString("client"));
+        assertTrue(failed.getString("message").startsWith("/check?secret=*"));
+        assertNotNull(failed.getString("time"));
+        JsonObject frame = new JsonObject(lines[1]);
+        assertEquals("badFrame", frame.getString("event"));
+        assertFalse(frame.containsKey("client"));
+        assertEquals(0, log.drain(out));
+    }
+
+    @Test
+    public void testDropsWhenFull() throws Exception {
+        EventLog log = new EventLog(4, "", 0);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(log.publish(EventLog.Event.FAILED, null, "/check"));
+        }
+        assertFalse(log.publish(EventLog.Event.FAILED, null, "/check"));
+        assertEquals(1, log.getDropped());
+        assertEquals(4, log.drain(new StringWriter()));
+        assertTrue(log.publish(EventLog.Event.FAILED, null, "/check")); // slots freed
+    }
+
+    @Test
+    public void testSampleAndRate() {
+        EventLog log = new EventLog(64, "failed=4,replayed=1:3", 100);
+        int kept = 0;
+        for (int i = 0; i < 20; i++) {
+            kept += log.publish(EventLog.Event.FAILED, null, "/check") ? 1 : 0;
+        }
+        assertEquals(5, kept);
+        assertEquals(15, log.getSampled());
+        kept = 0;
+        for (int i = 0; i < 10; i++) {
+            kept += log.publish(EventLog.Event.REPLAYED, null, "/check") ? 1 : 0;
+        }
+        assertEquals(3, kept); // a second has not passed
+        assertEquals(7, log.getLimited());
+    }
+
+    @Test
+    public void testParse() {
+        EventLog.Policy policy = EventLog.parse("failed=10:50, notFound=2", 7).get("notFound");
+        assertEquals(2, policy.getSample());
+        assertEquals(7, policy.getRate());
+        assertEquals(50, EventLog.parse("failed=10:50", 7).get("failed").getRate());
+        try {
+            EventLog.parse("unknown=1", 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReplacedWriterStops() throws Exception {
+        EventLog.configure(16, "", 0);
+        Thread first = EventLog.shared().getWriter();
+        assertTrue(first.isAlive());
+        EventLog.configure(16, "", 0);
+        Thread second = EventLog.shared().getWriter();
+        first.join(5000);
+        assertFalse(first.isAlive());
+        EventLog.configure(0, "", 0);
+        second.join(5000);
+        assertFalse(second.isAlive());
+        assertNull(EventLog.shared().getWriter());
+    }
+}
@@ -0,0 +1,58 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FailureGuardTest {
+    private static final long INTERVAL = 300000000; // microseconds
+
+    @Test
+    public void testLocksAfterFailures() {
+        FailureGuard guard = new FailureGuard(64, 3, 300);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, guard.locked(42, 1));
+            guard.failed(42, 1);
+        }
+        assertEquals(INTERVAL, guard.locked(42, 1));
+        assertEquals(1, guard.locked(42, INTERVAL));
+        assertEquals(0, guard.locked(42, INTERVAL + 1)); // one more failure allowed
+        assertEquals(0, guard.locked(43, 1)); // other users unaffected
+        assertEquals(2, guard.getRejected());
+    }
+
+    @Test
+    public void testFullTableFailsClosed() {
+        FailureGuard guard = new FailureGuard(8, 5, 300); // a single segment of 8 slots
+        for (long user = 1; user <= 8; user++) {
+            guard.failed(user, 1);
+        }
+        // every slot holds another user's active bucket, so a failure could not be counted
+        assertEquals(INTERVAL, guard.locked(9, 1));
+        guard.failed(9, 1);
+        assertEquals(1, guard.getFull());
+        assertEquals(0, guard.locked(1, 1)); // users with a bucket are still checked
+
+        // refilled buckets are reclaimed
+        assertEquals(0, guard.locked(9, INTERVAL + 1));
+        guard.failed(9, INTERVAL + 1);
+        assertEquals(0, guard.locked(9, INTERVAL + 1));
+    }
+
+    @Test
+    public void testFullUserIds() {
+        FailureGuard guard = new FailureGuard(8, 1, 300);
+        guard.failed(1L << 48, 1);
+        assertTrue(guard.locked(1L << 48, 1) > 0);
+        assertEquals(0, guard.locked(1L << 49, 1)); // same low bits, another user
+        assertEquals(0, guard.locked(1, 1));
+    }
+
+    @Test
+    public void testConfigure() {
+        FailureGuard.configure(64, 0, 300);
+        assertNull(FailureGuard.shared());
+        FailureGuard.configure(64, 5, 300);
+        assertNotNull(FailureGuard.shared());
+        FailureGuard.configure(64, 0, 300);
+    }
+}
@@ -0,0 +1,72 @@
+package com.josephcday.totp;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import io.vertx.ext.web.api.validation.ValidationException;
+
+public class FastPathTest {
+    private static OpenAPI contract;
+
+    @BeforeClass
+    public static void parseContract() {
+        contract = Contract.get();
+    }
+
+    @Test
+    public void testCheckParameters() {
+        FastPath check = FastPath.compile(contract, "checkGET");
+        assertEquals("/check", check.getRoute());
+        FastPath.Values values = check.parse("/check", "secret=QB5UDBW7OQKYYDZU&token=937384&unixtime=158524245");
+        assertEquals("QB5UDBW7OQKYYDZU", values.getString(check.indexOf("secret")));
+        assertEquals(937384, values.getLong(check.indexOf("token")));
+        assertEquals(158524245, values.getLong(check.indexOf("unixtime")));
+        assertFalse(values.has(check.indexOf("millisec")));
+        assertFalse(values.has(check.indexOf("window")));
+    }
+
+    @Test
+    public void testTokenPathParameter() {
+        FastPath token = FastPath.compile(contract, "tokenGET");
+        assertEquals("/token/:secret", token.getRoute());
+        FastPath.Values values = token.parse("/token/QB5UDBW7OQKYYDZU", "millisec=5&other=x");
+        assertEquals("QB5UDBW7OQKYYDZU", values.getString(token.indexOf("secret")));
+        assertEquals(5, values.getLong(token.indexOf("millisec")));
+
+        // every length /secret issues
+        for (String secret : new String[] { "QB5UDBW7OQKYYDZUQB5UDBW7OQ", "QB5UDBW7OQKYYDZUQB5UDBW7OQKYYDZU" }) {
+            assertEquals(secret, token.parse("/token/" + secret, null).getString(token.indexOf("secret")));
+        }
+    }
+
+    @Test
+    public void testContractMessages() {
+        FastPath check = FastPath.compile(contract, "checkGET");
+        String pattern = "Value doesn't respect pattern ^([A-Z2-7]{16}|[A-Z2-7]{26}|[A-Z2-7]{32})$";
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZ&token=1", pattern);
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZUAAAA&token=1", pattern);
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZU",
+                "Error during validation of request. Parameter \"token\" inside query not found");
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZU&token=abc", "Value is not a valid number");
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZU&token=1234567", "Number should be <= 999999.0");
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZU&token=-1", "Number should be >= 0.0");
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZU&token=1&window=500", "Number should be <= 120.0");
+        assertMessage(check, "secret=QB5UDBW7OQKYYDZU&token=1&token=2", "Parameter  not expected as an array");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedOperation() {
+        FastPath.compile(contract, "imageGET"); // enum parameter
+    }
+
+    private static void assertMessage(FastPath fastPath, String query, String message) {
+        try {
+            fastPath.parse("/check", query);
+            fail("expected validation failure for " + query);
+        } catch (ValidationException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class HmacSha1Test {
+    @Test
+    public void testMatchesJce() throws GeneralSecurityException {
+        Random random = new Random(42);
+        HmacSha1 hmac = new HmacSha1();
+        Mac mac = Mac.getInstance("HmacSHA1");
+        byte[] hash = new byte[HmacSha1.HASH_LENGTH];
+        for (int keyLength : new int[] { 1, 10, 20, 32, 63, 64, 65, 100, 128, 200 }) {
+            byte[] key = new byte[keyLength];
+            random.nextBytes(key);
+            hmac.init(key, keyLength);
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            for (int i = 0; i < 20; i++) {
+                long counter = random.nextLong();
+                hmac.doFinal(counter, hash);
+                assertArrayEquals(mac.doFinal(ByteBuffer.allocate(8).putLong(counter).array()), hash);
+            }
+        }
+    }
+}
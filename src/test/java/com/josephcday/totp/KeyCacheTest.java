@@ -0,0 +1,73 @@
+package com.josephcday.totp;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+public class KeyCacheTest {
+    @After
+    public void disable() {
+        KeyCache.configure(0, 0);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        KeyCache cache = new KeyCache(100, 0);
+        HmacSha1 hmac = new HmacSha1();
+        hmac.init(new byte[] { 1, 2, 3 }, 3);
+        assertFalse(cache.load("AAAA", hmac));
+        cache.store("AAAA", hmac);
+
+        HmacSha1 other = new HmacSha1();
+        assertTrue(cache.load("AAAA", other));
+        byte[] expected = new byte[HmacSha1.HASH_LENGTH];
+        byte[] actual = new byte[HmacSha1.HASH_LENGTH];
+        hmac.doFinal(42L, expected);
+        other.doFinal(42L, actual);
+        assertArrayEquals(expected, actual);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testBounded() {
+        KeyCache cache = new KeyCache(16, 0);
+        HmacSha1 hmac = new HmacSha1();
+        hmac.init(new byte[] { 1 }, 1);
+        for (int i = 0; i < 1000; i++) {
+            cache.store(TOTP.b32Secret(), hmac);
+        }
+        assertTrue(cache.size() <= 16);
+        assertTrue(cache.getEvictions() >= 1000 - 16);
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        KeyCache cache = new KeyCache(100, 1);
+        HmacSha1 hmac = new HmacSha1();
+        hmac.init(new byte[] { 1 }, 1);
+        cache.store("AAAA", hmac);
+        assertTrue(cache.load("AAAA", hmac));
+        Thread.sleep(1100);
+        assertFalse(cache.load("AAAA", hmac));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSharedTokens() throws InvalidKeyException, NoSuchAlgorithmException {
+        String first = TOTP.b32Secret();
+        String second = TOTP.b32Secret();
+        String expected = TOTP.getToken(second, 158524245000L);
+        TOTP.getToken(first, 158524245000L);
+
+        KeyCache.configure(100, 60);
+        assertEquals(TOTP.getToken(second, 158524245000L), expected);
+        TOTP.getToken(first, 158524245000L);
+        // cached midstates now key the engine
+        assertEquals(TOTP.getToken(second, 158524245000L), expected);
+        assertEquals(1, KeyCache.shared().getHits());
+    }
+}
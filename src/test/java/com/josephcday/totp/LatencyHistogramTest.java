@@ -0,0 +1,42 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketPrecision() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.upperBound(LatencyHistogram.index(value)));
+        }
+        for (long value = 64; value < (1L << 40); value = value * 3 / 2 + 7) {
+            long bound = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(value + " <= " + bound, value <= bound);
+            assertTrue(value + " within 1/32 of " + bound, bound - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtQuantile(0.99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500000L, histogram.getSum());
+        assertEquals(1000000L, histogram.getMax());
+        assertEquals(500000, histogram.getValueAtQuantile(0.5), 500000 / 32);
+        assertEquals(990000, histogram.getValueAtQuantile(0.99), 990000 / 32);
+        assertEquals(1000000L, histogram.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    public void testClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        assertEquals((1L << 40) - 1, histogram.getMax());
+    }
+}
@@ -0,0 +1,48 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+    @Test
+    public void testRender() {
+        Metrics metrics = new Metrics();
+        metrics.operation("checkGET").end(200, 2000000);
+        metrics.operation("checkGET").end(401, 1000000);
+        metrics.operation("checkGET").end(418, 1000000);
+        metrics.operation("checkGET").hmacs(3);
+        metrics.operation("imageGET").queueDelay(5000);
+        metrics.qrRender(3000000);
+
+        String text = metrics.render();
+        assertTrue(text.contains("# TYPE totp_request_duration_seconds summary\n"));
+        assertTrue(text.contains("totp_request_duration_seconds_count{operation=\"checkGET\"} 3\n"));
+        assertTrue(text.contains("totp_request_duration_seconds_sum{operation=\"checkGET\"} 0.004\n"));
+        assertTrue(text.contains("totp_requests_total{operation=\"checkGET\",status=\"200\"} 1\n"));
+        assertTrue(text.contains("totp_requests_total{operation=\"checkGET\",status=\"401\"} 1\n"));
+        assertTrue(text.contains("totp_requests_total{operation=\"checkGET\",status=\"other\"} 1\n"));
+        assertTrue(text.contains("totp_hmac_total{operation=\"checkGET\"} 3\n"));
+        assertTrue(text.contains("totp_worker_queue_delay_seconds_count{operation=\"imageGET\"} 1\n"));
+        assertFalse(text.contains("totp_worker_queue_delay_seconds_count{operation=\"checkGET\"}"));
+        assertTrue(text.contains("totp_qr_render_seconds_count 1\n"));
+        assertTrue(text.contains("totp_event_loop_delay_seconds{quantile=\"0.99\"} 0.0\n"));
+    }
+
+    @Test
+    public void testCountedHmacs() {
+        Metrics.configure(true);
+        try {
+            Metrics.counted("tokenGET", routingContext -> {
+                try {
+                    TOTP.getTokenValue("QB5UDBW7OQKYYDZU", 158524245000L);
+                    TOTP.getTokenValue("QB5UDBW7OQKYYDZU", 158524275000L);
+                } catch (Exception e) {
+                    fail(e.getMessage());
+                }
+            }).handle(null);
+            assertTrue(Metrics.shared().render().contains("totp_hmac_total{operation=\"tokenGET\"} 2\n"));
+        } finally {
+            Metrics.configure(false);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.josephcday.totp;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.Router;
+
+public class OperationExecutorTest {
+    @After
+    public void disable() {
+        OperationExecutor.configure("", 1, 0);
+    }
+
+    @Test
+    public void testParse() {
+        Map<String, OperationExecutor.Policy> policies = OperationExecutor
+                .parse("imageGET=worker:2:8, checkGET=eventloop,tokenGET=virtual::16", 4, 32);
+        assertEquals(OperationExecutor.Model.WORKER, policies.get("imageGET").model);
+        assertEquals(2, policies.get("imageGET").threads);
+        assertEquals(10, policies.get("imageGET").limit);
+        assertEquals(OperationExecutor.Model.EVENTLOOP, policies.get("checkGET").model);
+        assertEquals(OperationExecutor.Model.VIRTUAL, policies.get("tokenGET").model);
+        assertEquals(20, policies.get("tokenGET").limit);
+        assertNull(policies.get("secretGET"));
+        assertTrue(OperationExecutor.parse("", 4, 32).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRejectsUnknownModel() {
+        OperationExecutor.parse("imageGET=fibers", 4, 32);
+    }
+
+    @Test
+    public void testModelDefaultsToEventLoop() {
+        OperationExecutor.configure("imageGET=worker", 4, 32);
+        assertEquals(OperationExecutor.Model.WORKER, OperationExecutor.model("imageGET"));
+        assertEquals(OperationExecutor.Model.EVENTLOOP, OperationExecutor.model("checkGET"));
+    }
+
+    @Test
+    public void testAdmissionBound() {
+        OperationExecutor.Policy policy = new OperationExecutor.Policy(OperationExecutor.Model.WORKER, 1, 1);
+        assertTrue(policy.admit());
+        assertTrue(policy.admit());
+        assertFalse(policy.admit());
+        assertEquals(2, policy.getAdmitted());
+        policy.release();
+        assertTrue(policy.admit());
+    }
+
+    @Test
+    public void testWorkerOffloadsFromEventLoop() throws Exception {
+        OperationExecutor.configure("imageGET=worker:2:0", 4, 32);
+        Vertx vertx = Vertx.vertx();
+        try {
+            Router router = Router.router(vertx);
+            router.get("/image").handler(OperationExecutor.wrap(vertx, "imageGET", routingContext -> {
+                routingContext.response().end(Thread.currentThread().getName() + " "
+                        + Context.isOnEventLoopThread());
+            }));
+            int port = TestHttp.listen(vertx, router).actualPort();
+            String[] ran = TestHttp.get(vertx, port, "/image").body.toString().split(" ");
+            assertTrue(ran[0], ran[0].startsWith("totp-imageGET"));
+            assertEquals("false", ran[1]);
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void testFullQueueAnswers503() throws Exception {
+        OperationExecutor.configure("imageGET=worker:1:0", 4, 32);
+        Vertx vertx = Vertx.vertx();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Router router = Router.router(vertx);
+            router.get("/image").handler(OperationExecutor.wrap(vertx, "imageGET", routingContext -> {
+                running.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                routingContext.response().end("done");
+            }));
+            int port = TestHttp.listen(vertx, router).actualPort();
+
+            // the one admitted request holds the only thread, with no queue behind it
+            CompletableFuture<TestHttp.Response> first = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return TestHttp.get(vertx, port, "/image");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            TestHttp.Response rejected = TestHttp.get(vertx, port, "/image");
+            assertEquals(503, rejected.status);
+            assertEquals("1", rejected.headers.get("Retry-After"));
+
+            release.countDown();
+            assertEquals("done", first.get(10, TimeUnit.SECONDS).body.toString());
+            assertEquals(200, TestHttp.get(vertx, port, "/image").status);
+        } finally {
+            release.countDown();
+            vertx.close();
+        }
+    }
+}
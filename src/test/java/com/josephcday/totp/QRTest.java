@@ -0,0 +1,107 @@
+package com.josephcday.totp;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.imageio.ImageIO;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class QRTest {
+    private static final String URL = TOTP.generateUrl("QRTest", "QB5UDBW7OQKYYDZU");
+
+    @After
+    public void disable() {
+        QR.configure(0);
+    }
+
+    @Test
+    public void testPngMatchesMatrix() throws WriterException, IOException {
+        for (int size : new int[] { 32, 128, 301 }) {
+            Buffer png = QR.generateQRCodeImage(URL, size);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.getBytes()));
+            BitMatrix matrix = new QRCodeWriter().encode(URL, BarcodeFormat.QR_CODE, size, size);
+            // zxing grows images below the minimum size for the code
+            assertEquals(matrix.getWidth(), image.getWidth());
+            assertEquals(matrix.getHeight(), image.getHeight());
+            for (int y = 0; y < matrix.getHeight(); y++) {
+                for (int x = 0; x < matrix.getWidth(); x++) {
+                    assertEquals(matrix.get(x, y) ? 0xFF000000 : 0xFFFFFFFF, image.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCacheAndEtag() throws WriterException, IOException {
+        QR.configure(2);
+        Buffer first = QR.generateQRCodeImage(URL, 128);
+        assertSame(first, QR.generateQRCodeImage(URL, 128));
+        assertEquals(QR.etag(URL, 128), QR.etag(URL, 128));
+        assertNotEquals(QR.etag(URL, 128), QR.etag(URL, 256));
+    }
+
+    @Test
+    public void testEtagMatches() {
+        String etag = QR.etag(URL, 128);
+        assertTrue(QR.matches(etag, etag));
+        assertTrue(QR.matches("\"other\", W/" + etag, etag));
+        assertTrue(QR.matches("*", etag));
+        assertFalse(QR.matches(null, etag));
+        assertFalse(QR.matches("\"other\"", etag));
+        assertFalse(QR.matches(etag + "x", etag)); // contains the tag, but is another tag
+        assertFalse(QR.matches(etag.substring(0, etag.length() - 1), etag));
+    }
+
+    @Test
+    public void testWarmUpBypassesCache() throws WriterException {
+        QR.configure(1);
+        Buffer first = QR.generateQRCode(URL, 128, QR.Format.SVG);
+        QR.warmUp();
+        assertSame(first, QR.generateQRCode(URL, 128, QR.Format.SVG));
+    }
+
+    @Test
+    public void testModules() throws WriterException {
+        BitMatrix matrix = new QRCodeWriter().encode(URL, BarcodeFormat.QR_CODE, 0, 0,
+                Collections.singletonMap(EncodeHintType.MARGIN, 0));
+        JsonObject json = QR.generateQRCode(URL, 128, QR.Format.JSON).toJsonObject();
+        JsonArray rows = json.getJsonArray("rows");
+        assertEquals(matrix.getWidth(), (int) json.getInteger("modules"));
+        assertEquals(matrix.getHeight(), rows.size());
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                assertEquals(matrix.get(x, y) ? '1' : '0', rows.getString(y).charAt(x));
+            }
+        }
+
+        String svg = QR.generateQRCode(URL, 256, QR.Format.SVG).toString();
+        assertTrue(svg.startsWith("<svg "));
+        assertTrue(svg.contains("width=\"256\""));
+        assertTrue(svg.endsWith("</svg>"));
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertEquals(QR.Format.PNG, QR.Format.negotiate(null, Collections.emptyList()));
+        assertEquals(QR.Format.SVG, QR.Format.negotiate("svg", Collections.emptyList()));
+        assertEquals(QR.Format.SVG, QR.Format.negotiate(null, Arrays.asList("image/svg+xml", "image/png")));
+        assertEquals(QR.Format.PNG, QR.Format.negotiate(null, Arrays.asList("image/webp", "*/*")));
+        assertEquals(QR.Format.JSON, QR.Format.negotiate(null, Arrays.asList("application/json")));
+    }
+}
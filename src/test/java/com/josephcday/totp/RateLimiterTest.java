@@ -0,0 +1,43 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+    @Test
+    public void testBurstThenReject() {
+        RateLimiter limiter = new RateLimiter(64, 10, 3); // one request per 100ms
+        long key = limiter.hash("10.0.0.1");
+        assertEquals(0, limiter.tryAcquire(key, 0));
+        assertEquals(0, limiter.tryAcquire(key, 0));
+        assertEquals(0, limiter.tryAcquire(key, 0));
+        assertEquals(100000, limiter.tryAcquire(key, 0));
+        assertEquals(0, limiter.tryAcquire(key, 100000));
+        assertEquals(1, limiter.getRejected());
+        assertEquals(4, limiter.getAdmitted());
+    }
+
+    @Test
+    public void testKeysIndependent() {
+        RateLimiter limiter = new RateLimiter(64, 1, 1);
+        assertEquals(0, limiter.tryAcquire(limiter.hash("10.0.0.1"), 0));
+        assertTrue(limiter.tryAcquire(limiter.hash("10.0.0.1"), 0) > 0);
+        assertEquals(0, limiter.tryAcquire(limiter.hash("10.0.0.2"), 0));
+    }
+
+    @Test
+    public void testIdleBucketsReclaimed() {
+        RateLimiter limiter = new RateLimiter(4, 1, 1); // a single run of probed slots
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, limiter.tryAcquire(limiter.hash("client" + i), 0));
+        }
+        // every slot holds an active bucket, new keys are admitted untracked
+        assertEquals(0, limiter.tryAcquire(limiter.hash("client4"), 0));
+        assertEquals(1, limiter.getOverflows());
+
+        // a second later the buckets are full again and their slots are reused
+        assertEquals(0, limiter.tryAcquire(limiter.hash("client5"), 1000000));
+        assertTrue(limiter.tryAcquire(limiter.hash("client5"), 1000000) > 0);
+        assertEquals(1, limiter.getOverflows());
+    }
+}
@@ -0,0 +1,78 @@
+package com.josephcday.totp;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+public class ReplayGuardTest {
+    @After
+    public void disable() {
+        ReplayGuard.configure(0, 0);
+    }
+
+    @Test
+    public void testRejectsReuse() {
+        ReplayGuard guard = new ReplayGuard(1024, 1);
+        long now = TOTP.step(System.currentTimeMillis());
+        assertTrue(guard.accept("QB5UDBW7OQKYYDZU", now));
+        assertFalse(guard.accept("QB5UDBW7OQKYYDZU", now));
+        assertTrue(guard.accept("QB5UDBW7OQKYYDZU", now - 1));
+        assertTrue(guard.accept("GEZDGNBVGY3TQOJQ", now));
+        assertEquals(1, guard.getReplays());
+        assertEquals(3, guard.getAccepted());
+    }
+
+    @Test
+    public void testOutsideWindowFailsClosed() {
+        ReplayGuard guard = new ReplayGuard(1024, 1);
+        long now = TOTP.step(System.currentTimeMillis());
+        assertFalse(guard.accept("QB5UDBW7OQKYYDZU", now - 10));
+        assertFalse(guard.accept("QB5UDBW7OQKYYDZU", now + 2));
+        assertEquals(0, guard.getAccepted());
+        assertEquals(2, guard.getUntracked());
+    }
+
+    @Test
+    public void testOverflowFailsClosed() {
+        ReplayGuard guard = new ReplayGuard(4, 0);
+        long now = TOTP.step(System.currentTimeMillis());
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            accepted += guard.accept(TOTP.b32Secret(), now) ? 1 : 0;
+        }
+        assertEquals(guard.getAccepted(), accepted);
+        assertEquals(100 - accepted, guard.getOverflows());
+    }
+
+    @Test
+    public void testCheckOnce() throws InvalidKeyException, NoSuchAlgorithmException {
+        ReplayGuard.configure(1024, 2);
+        String secret = TOTP.b32Secret();
+        long now = System.currentTimeMillis();
+        int token = Integer.parseInt(TOTP.getToken(secret, now));
+        assertTrue(TOTP.checkOnce(secret, token, now, 1).isValid());
+        assertTrue(TOTP.checkOnce(secret, token, now, 1).isReplay());
+    }
+
+    @Test
+    public void testReplayAtOffset() throws InvalidKeyException, NoSuchAlgorithmException {
+        ReplayGuard.configure(1024, EnvVars._replayWindow);
+        String secret = TOTP.b32Secret();
+        long now = System.currentTimeMillis();
+        int token = Integer.parseInt(TOTP.getToken(secret, now + 5 * 30000L));
+        ValidationResult first = TOTP.checkOnce(secret, token, now, 5);
+        assertTrue(first.isValid());
+        assertEquals(5, first.getOffset());
+        assertTrue(TOTP.checkOnce(secret, token, now, 5).isReplay());
+        assertTrue(TOTP.checkOnce(secret, token, now + 30000L, 5).isReplay()); // same interval at offset 4
+
+        // a caller supplied time far from now cannot be recorded
+        long past = 158524245000L;
+        int old = Integer.parseInt(TOTP.getToken(secret, past));
+        assertTrue(TOTP.check(secret, old, past, 0).isValid());
+        assertTrue(TOTP.checkOnce(secret, old, past, 0).isReplay());
+    }
+}
@@ -0,0 +1,47 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+public class ResponsesTest {
+    @Test
+    public void testToken() {
+        assertEquals("{\"token\":\"937384\"}", Responses.token(937384).toString());
+        assertEquals("{\"token\":\"000042\"}", Responses.token(42).toString());
+        assertEquals("{\"token\":\"000000\"}", Responses.token(0).toString());
+    }
+
+    @Test
+    public void testTokenBuffersIndependent() {
+        Buffer first = Responses.token(111111);
+        Responses.token(222222); // reuses the template
+        assertEquals("{\"token\":\"111111\"}", first.toString());
+    }
+
+    @Test
+    public void testOffset() {
+        assertEquals(new JsonObject().put("offset", 0).encode(), Responses.offset(0).toString());
+        assertEquals(new JsonObject().put("offset", -120).encode(), Responses.offset(-120).toString());
+        assertEquals(new JsonObject().put("offset", 500).encode(), Responses.offset(500).toString());
+        assertSame(Responses.offset(3), Responses.offset(3));
+    }
+
+    @Test
+    public void testErrorBodies() {
+        assertEquals(new JsonObject().put("code", 400).put("message", "Bad Request").encode(),
+                Responses.BAD_REQUEST.toString());
+        assertEquals(new JsonObject().put("code", 404).put("message", "Not Found").encode(),
+                Responses.NOT_FOUND.toString());
+    }
+
+    @Test
+    public void testCompressible() {
+        assertTrue(Responses.compressible("application/json"));
+        assertTrue(Responses.compressible("image/svg+xml"));
+        assertTrue(Responses.compressible("application/x-ndjson"));
+        assertFalse(Responses.compressible("image/png"));
+    }
+}
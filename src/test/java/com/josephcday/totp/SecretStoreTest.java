@@ -0,0 +1,127 @@
+package com.josephcday.totp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+public class SecretStoreTest {
+    private static final byte[] KEY = "0123456789abcdef".getBytes();
+    private static final String SECRET = "QB5UDBW7OQKYYDZU";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutGetDelete() throws Exception {
+        try (SecretStore store = new SecretStore(folder.getRoot().toPath().resolve("secrets"), KEY)) {
+            assertNull(store.get(42));
+            store.put(42, SECRET);
+            store.put(43, "JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP");
+            assertEquals(SECRET, store.get(42));
+            assertEquals("JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP", store.get(43));
+            store.put(42, "GEZDGNBVGY3TQOJQ");
+            assertEquals("GEZDGNBVGY3TQOJQ", store.get(42));
+            assertTrue(store.delete(42));
+            assertFalse(store.delete(42));
+            assertNull(store.get(42));
+            assertEquals(1, store.getSize());
+        }
+    }
+
+    @Test
+    public void testManyUsers() throws Exception {
+        try (SecretStore store = new SecretStore(folder.getRoot().toPath().resolve("secrets"), KEY)) {
+            for (long id = 1; id <= 5000; id++) {
+                store.put(id, SECRET);
+            }
+            for (long id = 1; id <= 5000; id += 2) {
+                assertTrue(store.delete(id));
+            }
+            for (long id = 1; id <= 5000; id++) {
+                assertEquals(id % 2 == 0 ? SECRET : null, store.get(id));
+            }
+            assertEquals(2500, store.getSize());
+        }
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("secrets");
+        int length;
+        try (SecretStore store = new SecretStore(path, KEY)) {
+            store.put(1, SECRET);
+            store.put(2, SECRET);
+            store.put(3, SECRET);
+            store.delete(2);
+            length = store.getLength();
+        }
+
+        // a write torn by a crash leaves a partial record after the last good one
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(length);
+            file.writeInt(60);
+            file.writeInt(12345);
+            file.write(new byte[] { 1, 0, 0, 0 });
+        }
+        try (SecretStore store = new SecretStore(path, KEY)) {
+            assertEquals(SECRET, store.get(1));
+            assertNull(store.get(2));
+            assertEquals(SECRET, store.get(3));
+            assertEquals(length, store.getLength());
+            store.put(4, SECRET); // overwrites the torn record
+        }
+        try (SecretStore store = new SecretStore(path, KEY)) {
+            assertEquals(3, store.getSize());
+            assertEquals(SECRET, store.get(4));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("secrets");
+        try (SecretStore store = new SecretStore(path, KEY)) {
+            for (int round = 0; round < 10; round++) {
+                for (long id = 1; id <= 100; id++) {
+                    store.put(id, SECRET);
+                }
+            }
+            store.delete(50);
+            int before = store.getLength();
+            store.compact();
+            assertTrue(store.getLength() < before / 5);
+            assertEquals(SECRET, store.get(1));
+            assertNull(store.get(50));
+            store.put(101, SECRET);
+        }
+        assertFalse(Files.exists(path.resolveSibling("secrets.compact")));
+        try (SecretStore store = new SecretStore(path, KEY)) {
+            assertEquals(100, store.getSize());
+            assertEquals(SECRET, store.get(101));
+        }
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void testWrongKey() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("secrets");
+        try (SecretStore store = new SecretStore(path, KEY)) {
+            store.put(7, SECRET);
+        }
+        try (SecretStore store = new SecretStore(path, "fedcba9876543210".getBytes())) {
+            store.get(7);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAStore() throws Exception {
+        Path path = folder.newFile("other").toPath();
+        Files.write(path, "not a store at all".getBytes());
+        new SecretStore(path, KEY).close();
+    }
+}
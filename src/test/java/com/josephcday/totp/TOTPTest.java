@@ -18,6 +18,22 @@ public class TOTPTest {
         });
     }
 
+    @Test
+    public void testSecretLengths() throws InvalidKeyException, NoSuchAlgorithmException {
+        int[] counts = new int[32];
+        for (int length : new int[] { 16, 26, 32 }) {
+            for (int i = 0; i < 100; i++) {
+                String b32Secret = TOTP.b32Secret(length);
+                assertEquals(b32Secret.length(), length);
+                b32Secret.chars().forEach(charInt -> counts[TOTP.BASE32_CHARS.indexOf(charInt)]++);
+                TOTP.getToken(b32Secret); // decodes to a usable key
+            }
+        }
+        for (int count : counts) {
+            assertTrue(count > 0);
+        }
+    }
+
     @Test
     public void testValidate() throws InvalidKeyException, NoSuchAlgorithmException {
         // http://localhost:8080/check?secret=QB5UDBW7OQKYYDZU&token=937384&unixtime=158524245
@@ -32,6 +48,20 @@ public class TOTPTest {
         assertEquals(TOTP.validate("QB5UDBW7OQKYYDZU", 937384, 158524300, 5), true);
     }
 
+    @Test
+    public void testCheckOffset() throws InvalidKeyException, NoSuchAlgorithmException {
+        // 937384 is the token for interval 5284141
+        assertEquals(TOTP.check("QB5UDBW7OQKYYDZU", 937384, 158524245000L, 0).getOffset(), 0);
+        assertEquals(TOTP.check("QB5UDBW7OQKYYDZU", 937384, 158524200000L, 2).getOffset(), 1);
+        assertEquals(TOTP.check("QB5UDBW7OQKYYDZU", 937384, 158524300000L, 5).getOffset(), -2);
+
+        // window reaches exactly 'window' intervals each way
+        assertEquals(TOTP.check("QB5UDBW7OQKYYDZU", 937384, 158524140000L, 3).getOffset(), 3);
+        assertEquals(TOTP.check("QB5UDBW7OQKYYDZU", 937384, 158524140000L, 2).isValid(), false);
+        assertEquals(TOTP.check("QB5UDBW7OQKYYDZU", 937384, 158524320000L, 3).getOffset(), -3);
+        assertEquals(TOTP.check("QB5UDBW7OQKYYDZU", 937384, 158524320000L, 2).isValid(), false);
+    }
+
     @Test
     public void testToken () throws InvalidKeyException, NoSuchAlgorithmException
     {
@@ -0,0 +1,157 @@
+package com.josephcday.totp;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Requests through the deployed verticle, once with the contract validation
+ * and once with the fast path. The secret store is only enabled on the second
+ * server, each launch reopens it.
+ */
+public class TOTPVerticleTest {
+    private static Vertx contractServer;
+    private static Vertx fastPathServer;
+    private static final int[] ports = new int[2];
+    private static final int APP_PORT = EnvVars._appPort;
+    private static final int INSTANCES = EnvVars._instances;
+    private static final boolean WARM_UP = EnvVars._warmUp;
+    private static final int LOG_BUFFER = EnvVars._logBuffer;
+    private static final int USER_FAILURES = EnvVars._userFailures;
+    private static Path store;
+
+    @BeforeClass
+    public static void launch() throws Exception {
+        EnvVars._instances = 1;
+        EnvVars._warmUp = false;
+        EnvVars._logBuffer = 0;
+        EnvVars._fastPath = false;
+        ports[0] = EnvVars._appPort = freePort();
+        contractServer = deploy();
+        EnvVars._fastPath = true;
+        store = Files.createTempDirectory("totp");
+        Files.write(store.resolve("key"), Base64.getEncoder().encode("0123456789abcdef".getBytes()));
+        EnvVars._storePath = store.resolve("secrets").toString();
+        EnvVars._storeKeyFile = store.resolve("key").toString();
+        EnvVars._userFailures = 3;
+        ports[1] = EnvVars._appPort = freePort();
+        fastPathServer = deploy();
+    }
+
+    @AfterClass
+    public static void close() throws Exception {
+        contractServer.close();
+        fastPathServer.close();
+        EnvVars._appPort = APP_PORT;
+        EnvVars._instances = INSTANCES;
+        EnvVars._warmUp = WARM_UP;
+        EnvVars._logBuffer = LOG_BUFFER;
+        EnvVars._fastPath = false;
+        EnvVars._storePath = "";
+        EnvVars._storeKeyFile = "";
+        EnvVars._userFailures = USER_FAILURES;
+        EventLog.configure(0, "", 0);
+        Metrics.configure(false);
+        FailureGuard.configure(0, 0, 0);
+        SecretStore.configure("", "");
+        for (String name : new String[] { "secrets", "key" }) {
+            store.resolve(name).toFile().delete();
+        }
+        store.toFile().delete();
+    }
+
+    @Test
+    public void testIssuedSecretLengths() throws Exception {
+        for (int port : ports) {
+            for (int length : new int[] { 16, 26, 32 }) {
+                String secret = new JsonObject(TestHttp.get(contractServer, port, "/secret?length=" + length).body
+                        .toString()).getString("secret");
+                assertEquals(length, secret.length());
+
+                TestHttp.Response token = TestHttp.get(contractServer, port,
+                        "/token/" + secret + "?unixtime=158524245");
+                assertEquals(secret, 200, token.status);
+                String value = new JsonObject(token.body.toString()).getString("token");
+                assertEquals(String.format("%06d", TOTP.getTokenValue(secret, 158524245000L)), value);
+
+                TestHttp.Response check = TestHttp.get(contractServer, port,
+                        "/check?secret=" + secret + "&token=" + value + "&unixtime=158524245");
+                assertEquals(secret, 200, check.status);
+                assertEquals(0, (int) new JsonObject(check.body.toString()).getInteger("offset"));
+            }
+            assertEquals(400, TestHttp.get(contractServer, port, "/token/QB5UDBW7OQKYYDZUAAAA").status);
+        }
+    }
+
+    @Test
+    public void testImageNotStored() throws Exception {
+        String uri = "/image?secret=QB5UDBW7OQKYYDZU&label=QRTest";
+        TestHttp.Response image = TestHttp.get(contractServer, ports[0], uri);
+        assertEquals(200, image.status);
+        assertEquals("image/png", image.headers.get("Content-Type"));
+        assertEquals("private,no-cache,no-store", image.headers.get("Cache-Control"));
+        String etag = image.headers.get("ETag");
+
+        TestHttp.Response revalidated = TestHttp.get(contractServer, ports[0], uri,
+                MultiMap.caseInsensitiveMultiMap().add("If-None-Match", etag));
+        assertEquals(304, revalidated.status);
+        assertEquals(0, revalidated.body.length());
+        assertEquals("private,no-cache,no-store", revalidated.headers.get("Cache-Control"));
+
+        TestHttp.Response other = TestHttp.get(contractServer, ports[0], uri,
+                MultiMap.caseInsensitiveMultiMap().add("If-None-Match", "W/" + etag + "x"));
+        assertEquals(200, other.status);
+    }
+
+    @Test
+    public void testUserCheckLimited() throws Exception {
+        String secret = TOTP.b32Secret(32);
+        SecretStore.shared().put(7, secret);
+        String check = "/users/7/check?unixtime=158524245&token=";
+        TestHttp.Response passed = TestHttp.get(fastPathServer, ports[1],
+                check + TOTP.getTokenValue(secret, 158524215000L) + "&window=120");
+        assertEquals(200, passed.status);
+        assertEquals(-1, (int) new JsonObject(passed.body.toString()).getInteger("offset"));
+        // two intervals away, only checked with a window the server does not allow
+        assertEquals(401, TestHttp.get(fastPathServer, ports[1],
+                check + TOTP.getTokenValue(secret, 158524185000L) + "&window=120").status);
+        int token = TOTP.getTokenValue(secret, 158524245000L);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(401, TestHttp.get(fastPathServer, ports[1], check + (token + 1) % 1000000).status);
+        }
+        TestHttp.Response locked = TestHttp.get(fastPathServer, ports[1], check + token);
+        assertEquals(429, locked.status);
+        assertTrue(Long.parseLong(locked.headers.get("Retry-After")) > 0);
+    }
+
+    private static Vertx deploy() throws Exception {
+        CompletableFuture<Void> deployed = new CompletableFuture<>();
+        Vertx vertx = TOTPVerticle.launch(ar -> {
+            if (ar.succeeded()) {
+                deployed.complete(null);
+            } else {
+                deployed.completeExceptionally(ar.cause());
+            }
+        });
+        deployed.get(30, TimeUnit.SECONDS);
+        return vertx;
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.josephcday.totp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.Router;
+
+/**
+ * Blocking HTTP helpers for tests that go through a real server.
+ */
+final class TestHttp {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private TestHttp() {
+    }
+
+    /**
+     * Starts a server for a router on a free port.
+     *
+     * @return the listening server
+     */
+    static HttpServer listen(Vertx vertx, Router router) throws Exception {
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer().requestHandler(router).listen(0, ar -> {
+            if (ar.succeeded()) {
+                listening.complete(ar.result());
+            } else {
+                listening.completeExceptionally(ar.cause());
+            }
+        });
+        return listening.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    static Response get(Vertx vertx, int port, String uri) throws Exception {
+        return send(vertx, HttpMethod.GET, port, uri, null, MultiMap.caseInsensitiveMultiMap(), 0);
+    }
+
+    static Response get(Vertx vertx, int port, String uri, MultiMap headers) throws Exception {
+        return send(vertx, HttpMethod.GET, port, uri, null, headers, 0);
+    }
+
+    static Response post(Vertx vertx, int port, String uri, Buffer body) throws Exception {
+        return send(vertx, HttpMethod.POST, port, uri, body, MultiMap.caseInsensitiveMultiMap(), 0);
+    }
+
+    /**
+     * Sends one request on a new connection and reads the whole response.
+     *
+     * @param readDelayMillis how long the response is left unread, to fill the
+     *                        server's write queue
+     */
+    @SuppressWarnings("deprecation") // vertx 3 has no replacement for the response handler yet
+    static Response send(Vertx vertx, HttpMethod method, int port, String uri, Buffer body, MultiMap headers,
+            long readDelayMillis) throws Exception {
+        HttpClient client = vertx.createHttpClient();
+        try {
+            CompletableFuture<Response> done = new CompletableFuture<>();
+            HttpClientRequest request = client.request(method, port, "localhost", uri).handler(response -> {
+                Buffer received = Buffer.buffer();
+                response.handler(received::appendBuffer);
+                response.exceptionHandler(done::completeExceptionally);
+                response.endHandler(v -> done.complete(
+                        new Response(response.statusCode(), response.headers(), received)));
+                if (readDelayMillis > 0) {
+                    response.pause();
+                    vertx.setTimer(readDelayMillis, id -> response.resume());
+                }
+            });
+            request.exceptionHandler(done::completeExceptionally).headers().addAll(headers);
+            if (body != null) {
+                request.end(body);
+            } else {
+                request.end();
+            }
+            return done.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Status, headers and body of a response.
+     */
+    static final class Response {
+        final int status;
+        final MultiMap headers;
+        final Buffer body;
+
+        Response(int status, MultiMap headers, Buffer body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String[] lines() {
+            String text = body.toString();
+            return text.isEmpty() ? new String[0] : text.split("\n");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.josephcday.totp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ThreadStatePoolTest {
+
+    @Test
+    public void testStateOutlivesThreads() throws Exception {
+        ThreadStatePool pool = new ThreadStatePool(1);
+        AtomicReference<Object[]> first = new AtomicReference<>();
+        AtomicReference<Object[]> second = new AtomicReference<>();
+        runOnNewThread(pool, () -> first.set(new Object[] { TokenEngine.get(), PngEncoder.get(), EntropyPool.get() }));
+        runOnNewThread(pool, () -> second.set(new Object[] { TokenEngine.get(), PngEncoder.get(), EntropyPool.get() }));
+        // a second short lived thread borrows what the first one created
+        assertArrayEquals(first.get(), second.get());
+        assertEquals(1, pool.getFree());
+    }
+
+    @Test
+    public void testLocalsClearedAfterRun() throws Exception {
+        ThreadStatePool pool = new ThreadStatePool(2);
+        AtomicReference<TokenEngine> lent = new AtomicReference<>();
+        AtomicReference<Object> after = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                pool.run(() -> lent.set(TokenEngine.get()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            after.set(TokenEngine.ENGINES.get());
+        });
+        thread.start();
+        thread.join();
+        assertNotNull(lent.get());
+        assertNull(after.get());
+    }
+
+    @Test
+    public void testSlotsBoundConcurrency() throws Exception {
+        ThreadStatePool pool = new ThreadStatePool(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger most = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    pool.run(() -> {
+                        most.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(String.valueOf(most.get()), most.get() <= 2);
+        assertEquals(2, pool.getFree());
+    }
+
+    private static void runOnNewThread(ThreadStatePool pool, Runnable task) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            try {
+                pool.run(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        thread.join();
+    }
+}
@@ -0,0 +1,55 @@
+package com.josephcday.totp;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+public class TokenCacheTest {
+    @After
+    public void disable() {
+        TokenCache.configure(0);
+    }
+
+    @Test
+    public void testCurrentStepOnly() {
+        TokenCache cache = new TokenCache(10);
+        long step = TOTP.step(System.currentTimeMillis());
+        cache.put("AAAA", step - 1, 123456);
+        assertNull(cache.get("AAAA", step - 1));
+        cache.put("AAAA", step, 123456);
+        Integer cached = cache.get("AAAA", step);
+        // the interval may have rolled over between put and get
+        assertTrue(cached == null || cached == 123456);
+    }
+
+    @Test
+    public void testBounded() {
+        TokenCache cache = new TokenCache(10);
+        long step = TOTP.step(System.currentTimeMillis());
+        for (int i = 0; i < 100; i++) {
+            cache.put(TOTP.b32Secret(), step, i);
+        }
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    public void testSharedTokens() throws InvalidKeyException, NoSuchAlgorithmException {
+        String secret = TOTP.b32Secret();
+        long now = System.currentTimeMillis();
+        String expected = TOTP.getToken(secret, now);
+        TokenCache.configure(100);
+        assertEquals(expected, TOTP.getToken(secret, now));
+        assertEquals(expected, TOTP.getToken(secret, now));
+        assertTrue(TOTP.validate(secret, Integer.parseInt(expected), now, 0));
+    }
+
+    @Test
+    public void testSecondsLeft() {
+        assertEquals(30, TOTP.secondsLeft(158524230000L));
+        assertEquals(15, TOTP.secondsLeft(158524245000L));
+        assertEquals(0, TOTP.secondsLeft(158524259999L));
+    }
+}
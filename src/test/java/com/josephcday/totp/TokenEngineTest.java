@@ -0,0 +1,56 @@
+package com.josephcday.totp;
+
+import org.apache.commons.codec.binary.Base32;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class TokenEngineTest {
+    // RFC 6238 appendix B SHA1 seed "12345678901234567890" in base32
+    private static final String RFC_SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+
+    @Test
+    public void testRfcVectors() throws InvalidKeyException, NoSuchAlgorithmException {
+        TokenEngine engine = TokenEngine.get().init(RFC_SECRET);
+        assertEquals(287082, engine.generate(59L / 30));
+        assertEquals(81804, engine.generate(1111111109L / 30));
+        assertEquals(50471, engine.generate(1111111111L / 30));
+        assertEquals(5924, engine.generate(1234567890L / 30));
+        assertEquals(279037, engine.generate(2000000000L / 30));
+        assertEquals(353130, engine.generate(20000000000L / 30));
+    }
+
+    @Test
+    public void testRekey() throws InvalidKeyException, NoSuchAlgorithmException {
+        TokenEngine engine = TokenEngine.get();
+        assertEquals(937384, engine.init("QB5UDBW7OQKYYDZU").generate(158524245L / 30));
+        assertEquals(287082, engine.init(RFC_SECRET).generate(59L / 30));
+        assertEquals(937384, engine.init("qb5udbw7oqkyydzu").generate(158524245L / 30));
+    }
+
+    @Test
+    public void testMatchesCommonsCodec() throws InvalidKeyException, NoSuchAlgorithmException {
+        Base32 codec = new Base32();
+        TokenEngine engine = TokenEngine.get();
+        for (int i = 0; i < 100; i++) {
+            String secret = TOTP.b32Secret();
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(codec.decode(secret), "HmacSHA1"));
+            byte[] hash = mac.doFinal(new byte[] { 0, 0, 0, 0, 0, 0, 0, (byte) i });
+            int offset = hash[19] & 0xF;
+            int expected = ((hash[offset] & 0x7F) << 24 | (hash[offset + 1] & 0xFF) << 16
+                    | (hash[offset + 2] & 0xFF) << 8 | (hash[offset + 3] & 0xFF)) % 1000000;
+            assertEquals(expected, engine.init(secret).generate(i));
+        }
+    }
+
+    @Test(expected = InvalidKeyException.class)
+    public void testEmptySecret() throws InvalidKeyException, NoSuchAlgorithmException {
+        TokenEngine.get().init("!!!!");
+    }
+}
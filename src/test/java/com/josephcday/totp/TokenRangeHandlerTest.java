@@ -0,0 +1,86 @@
+package com.josephcday.totp;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
+
+public class TokenRangeHandlerTest {
+    private static final String RANGE = "/token/QB5UDBW7OQKYYDZU/range";
+    private static Vertx vertx;
+    private static int port;
+
+    @BeforeClass
+    public static void listen() throws Exception {
+        vertx = Vertx.vertx();
+        OpenAPI3RouterFactory routerFactory = Contract.routerFactory(vertx, Contract.get());
+        routerFactory.addHandlerByOperationId("tokenRangeGET", new TokenRangeHandler());
+        port = TestHttp.listen(vertx, routerFactory.getRouter()).actualPort();
+    }
+
+    @AfterClass
+    public static void close() {
+        vertx.close();
+    }
+
+    @Test
+    public void testKnownToken() throws Exception {
+        TestHttp.Response response = TestHttp.get(vertx, port, RANGE + "?from=158524245");
+        assertEquals(200, response.status);
+        assertEquals("application/x-ndjson", response.headers.get("Content-Type"));
+        assertArrayEquals(new String[] { "{\"unixtime\":158524230,\"token\":\"937384\"}" }, response.lines());
+    }
+
+    @Test
+    public void testFromTo() throws Exception {
+        // both ends inclusive, each rounded down to its interval
+        String[] lines = TestHttp.get(vertx, port, RANGE + "?from=158524200&to=158524289").lines();
+        assertEquals(3, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            JsonObject line = new JsonObject(lines[i]);
+            long unixtime = 158524200 + i * 30;
+            assertEquals(unixtime, (long) line.getLong("unixtime"));
+            assertEquals(String.format("%06d", TOTP.getTokenValue("QB5UDBW7OQKYYDZU", unixtime * 1000)),
+                    line.getString("token"));
+        }
+        assertEquals(1, TestHttp.get(vertx, port, RANGE + "?from=158524245&to=158524245").lines().length);
+        assertEquals(1, TestHttp.get(vertx, port, RANGE + "?from=0").lines().length);
+        // past 2038, beyond a 32 bit unix time
+        assertEquals("{\"unixtime\":4102444800,\"token\":\""
+                + String.format("%06d", TOTP.getTokenValue("QB5UDBW7OQKYYDZU", 4102444800000L)) + "\"}",
+                TestHttp.get(vertx, port, RANGE + "?from=4102444800").lines()[0]);
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        String[] lines = TestHttp.get(vertx, port, RANGE + "?from=158524245&count=4").lines();
+        assertEquals(4, lines.length);
+        assertEquals(158524230 + 3 * 30, (long) new JsonObject(lines[3]).getLong("unixtime"));
+    }
+
+    @Test
+    public void testMultiMillionSteps() throws Exception {
+        int steps = 2000000;
+        String[] lines = TestHttp.get(vertx, port, RANGE + "?from=0&count=" + steps).lines();
+        assertEquals(steps, lines.length);
+        assertEquals((steps - 1) * 30L, (long) new JsonObject(lines[steps - 1]).getLong("unixtime"));
+    }
+
+    @Test
+    public void testBadRanges() throws Exception {
+        assertEquals(400, TestHttp.get(vertx, port, RANGE + "?from=158524245&to=158524200").status);
+        assertEquals(400, TestHttp.get(vertx, port, RANGE + "?from=-1").status);
+        assertEquals(400, TestHttp.get(vertx, port, RANGE + "?from=158524245&to=-30").status);
+        assertEquals(400, TestHttp.get(vertx, port, RANGE + "?from=158524245&count=0").status);
+        assertEquals(400, TestHttp.get(vertx, port, RANGE).status);
+        // later times would overflow in milliseconds
+        long max = TokenRangeHandler.MAX_UNIXTIME;
+        assertEquals(200, TestHttp.get(vertx, port, RANGE + "?from=" + max).status);
+        assertEquals(400, TestHttp.get(vertx, port, RANGE + "?from=" + (max + 1)).status);
+        assertEquals(400, TestHttp.get(vertx, port, RANGE + "?from=0&to=" + (max + 1)).status);
+    }
+}